@@ -0,0 +1,55 @@
+package benchmark;
+
+import io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * benchmark.FormattingBenchmark.java
+ * Measures the result formatting on long multi-page recognitions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FormattingBenchmark {
+
+    private static final String WRAPPED_LINE = "\\( f(x)=\\sum_{n=0}^{\\infty} \\frac{f^{(n)}(a)}{n !}(x-a)^{n} \\)  \\( e^{i \\pi}+1=0 \\) ";
+    private static final String MIXED_LINE = "where the series  of \\( e^{x} \\) converges for all \\( x \\in \\mathbb{R} \\)\n\\[\n\\int_{0}^{1} x^{2} d x=\\frac{1}{3}\n\\]\n";
+
+    @Param({"10", "1000"})
+    private int lines;
+
+    private String wrappedText;
+    private String mixedText;
+
+    @Setup
+    public void setup() {
+        wrappedText = WRAPPED_LINE.repeat(lines).trim();
+        mixedText = MIXED_LINE.repeat(lines);
+    }
+
+    @Benchmark
+    public boolean isTextAllWrapped() {
+        return IOUtils.isTextAllWrapped(wrappedText);
+    }
+
+    @Benchmark
+    public String formatWrappedText() {
+        return IOUtils.formatHelper(wrappedText, "\\begin{align*}", "\\end{align*}");
+    }
+
+    @Benchmark
+    public String formatMixedText() {
+        return IOUtils.formatHelper(mixedText, "$", "$");
+    }
+
+}
@@ -0,0 +1,107 @@
+package benchmark;
+
+import io.FXImageBridge;
+import io.ImageCodec;
+import io.ImagePreprocessor;
+import io.PreferenceHelper;
+import io.TimingReport;
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * benchmark.RecognitionBenchmark.java
+ * Measures the conversion, pre-processing and encoding of clipboard images of several sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RecognitionBenchmark {
+
+    @Param({"640x200", "1920x1080", "3840x2160"})
+    private String size;
+
+    private Image image;
+
+    /**
+     * Draw an equation-like screenshot of the given size.
+     */
+    @Setup
+    public void setup() {
+
+        var dimensions = size.split("x");
+        var width = Integer.parseInt(dimensions[0]);
+        var height = Integer.parseInt(dimensions[1]);
+
+        var bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        var graphics2D = bufferedImage.createGraphics();
+        graphics2D.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        graphics2D.setColor(Color.WHITE);
+        graphics2D.fillRect(0, 0, width, height);
+        graphics2D.setColor(Color.BLACK);
+        graphics2D.setFont(new Font(Font.SERIF, Font.ITALIC, height / 10));
+        graphics2D.drawString("f(x) = \u2211 f\u207f(a) (x \u2212 a)\u207f / n!", width / 10, height / 2);
+        graphics2D.dispose();
+
+        image = FXImageBridge.toFXImage(bufferedImage);
+
+    }
+
+    /**
+     * Convert, pre-process and encode the image as IO.Recognition does before sending it.
+     */
+    @Benchmark
+    public int encode() throws IOException {
+
+        var timingReport = new TimingReport();
+        var bufferedImage = FXImageBridge.fromFXImage(image);
+
+        try {
+            var processedImage = ImagePreprocessor.process(bufferedImage, timingReport);
+            var snapshot = PreferenceHelper.getSnapshot();
+            var codec = ImageCodec.select(processedImage, snapshot.getImageCodecOption());
+            var outputStream = new ByteArrayOutputStream();
+            codec.encode(processedImage, snapshot, outputStream);
+            return outputStream.size();
+        } finally {
+            FXImageBridge.release(bufferedImage);
+        }
+
+    }
+
+    /**
+     * Read the pixels into a pooled array, the buffer is reused by the next iteration.
+     */
+    @Benchmark
+    public int convert() {
+        var bufferedImage = FXImageBridge.fromFXImage(image);
+        var width = bufferedImage.getWidth();
+        FXImageBridge.release(bufferedImage);
+        return width;
+    }
+
+    /**
+     * Previous conversion allocating a new raster on every call, kept as the baseline of convert().
+     */
+    @Benchmark
+    public BufferedImage convertWithSwingFXUtils() {
+        return SwingFXUtils.fromFXImage(image, null);
+    }
+
+}
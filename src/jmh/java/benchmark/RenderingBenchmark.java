@@ -0,0 +1,49 @@
+package benchmark;
+
+import javafx.scene.image.Image;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ui.JLaTeXMathRenderingHelper;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * benchmark.RenderingBenchmark.java
+ * Measures the rendering of recognised formulas into JavaFX images.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RenderingBenchmark {
+
+    private static final Map<String, String> FORMULA_MAP = Map.of(
+            "inline", "\\( e^{i \\pi}+1=0 \\)",
+            "aligned", "\\( \\begin{aligned} f(x) &=\\sum_{n=0}^{\\infty} \\frac{f^{(n)}(a)}{n !}(x-a)^{n} \\\\ "
+                    + "g(x) &=\\int_{0}^{x} \\frac{\\sin t}{t} d t \\\\ "
+                    + "h(x) &=\\prod_{k=1}^{\\infty}\\left(1-\\frac{x^{2}}{k^{2} \\pi^{2}}\\right) \\end{aligned} \\)"
+    );
+
+    @Param({"inline", "aligned"})
+    private String formula;
+
+    private String latexSource;
+
+    @Setup
+    public void setup() {
+        latexSource = FORMULA_MAP.get(formula);
+    }
+
+    @Benchmark
+    public Image render() {
+        return JLaTeXMathRenderingHelper.render(latexSource);
+    }
+
+}
@@ -0,0 +1,103 @@
+package benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import io.Response;
+import io.ResponseDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * benchmark.ResponseBenchmark.java
+ * Measures the parsing of Mathpix API responses and the extraction of MathML and TSV results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseBenchmark {
+
+    // number of copies of the data section in the response, 1 for the original sample
+    @Param({"1", "50"})
+    private int dataCopies;
+
+    private byte[] body;
+
+    /**
+     * Response decoded again before each call, since the MathML and TSV results are memoized after the first one.
+     */
+    @State(Scope.Thread)
+    public static class FreshResponse {
+
+        private Response response;
+
+        @Setup(Level.Invocation)
+        public void setup(ResponseBenchmark benchmark) throws IOException {
+            response = benchmark.parse();
+        }
+
+    }
+
+    /**
+     * Load the sample response and enlarge its data section.
+     */
+    @Setup
+    public void setup() throws IOException {
+
+        String sample;
+        try (var inputStream = ResponseBenchmark.class.getClassLoader().getResourceAsStream("response-multiline.json")) {
+            sample = new String(Objects.requireNonNull(inputStream).readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        var jsonObject = JsonParser.parseString(sample).getAsJsonObject();
+        var data = jsonObject.getAsJsonArray("data");
+        var enlargedData = new JsonArray();
+
+        for (var i = 0; i < dataCopies; i++) {
+            enlargedData.addAll(data);
+        }
+
+        jsonObject.add("data", enlargedData);
+        body = jsonObject.toString().getBytes(StandardCharsets.UTF_8);
+
+    }
+
+    /**
+     * Decode from the raw bytes as the response body is streamed.
+     */
+    @Benchmark
+    public Response parse() throws IOException {
+        return ResponseDecoder.decode(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Join the MathML entries of the data section, only the first call does the work.
+     */
+    @Benchmark
+    public String getMathML(FreshResponse freshResponse) {
+        return freshResponse.response.getMathML();
+    }
+
+    /**
+     * Join the TSV entries of the data section, only the first call does the work.
+     */
+    @Benchmark
+    public String getTSV(FreshResponse freshResponse) {
+        return freshResponse.response.getTSV();
+    }
+
+}
@@ -1,24 +1,44 @@
 package entry;
 
+import io.BatchRecognition;
+import io.HistoryStore;
 import io.IOUtils;
+import io.MetricsServer;
+import io.OCRExecutor;
+import io.PreferenceHelper;
 import ui.App;
 
 import java.awt.Toolkit;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 
 /**
  * entry.Main.java
  * Java AWT wrapper to start up the JavaFX application.
  * Wrapper is used for hide app icon in the Dock.
+ * Runs IO.BatchRecognition without the JavaFX toolkit if "--batch" is given.
  */
 public class Main {
 
+    private static final String USAGE = "Usage: Image2LaTeX --batch <dir> [--out results.jsonl] [--concurrency "
+            + BatchRecognition.DEFAULT_CONCURRENCY + "]";
+
     /**
      * @param args command line arguments.
      */
     public static void main(String[] args) throws IOException {
 
+        // export metrics on the local port if it is set in the preferences
+        MetricsServer.start(PreferenceHelper.getMetricsServerPort());
+
+        if (Arrays.asList(args).contains("--batch")) {
+            System.exit(batch(args));
+        }
+
         if (IOUtils.isOSMacOSX()) {
             // hide icon in the Dock of macOS
             System.setProperty("apple.awt.UIElement", "true");
@@ -30,4 +50,55 @@ public class Main {
 
     }
 
+    /**
+     * Parse the batch mode arguments and run IO.BatchRecognition.
+     *
+     * @param args command line arguments.
+     * @return exit code, 0 if all images are recognised.
+     */
+    private static int batch(String[] args) {
+
+        Path directory = null;
+        var output = Paths.get("results.jsonl");
+        var concurrency = BatchRecognition.DEFAULT_CONCURRENCY;
+
+        try {
+            for (var i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--batch" -> directory = Paths.get(args[++i]);
+                    case "--out" -> output = Paths.get(args[++i]);
+                    case "--concurrency" -> concurrency = Integer.parseInt(args[++i]);
+                    default -> throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        if (directory == null || !Files.isDirectory(directory)) {
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        if (!IOUtils.isAPICredentialConfigValid()) {
+            System.err.println(IOUtils.INVALID_CREDENTIALS_ERROR);
+            return 1;
+        }
+
+        try {
+            var failedCount = new BatchRecognition(directory, output, concurrency).run();
+            System.err.println(failedCount == 0 ? "Done." : "Done with " + failedCount + " failed images, run again to retry them.");
+            return failedCount == 0 ? 0 : 1;
+        } catch (IOException | InterruptedException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        } finally {
+            OCRExecutor.shutdown();
+            HistoryStore.shutdown();
+            PreferenceHelper.shutdown();
+        }
+
+    }
+
 }
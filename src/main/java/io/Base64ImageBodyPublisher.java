@@ -0,0 +1,159 @@
+package io;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.concurrent.Flow;
+
+
+/**
+ * IO.Base64ImageBodyPublisher.java
+ * Request body publisher that streams the encoded image through a Base64 encoder.
+ * The body is the JSON prefix, the Base64 encoded image bytes and the JSON suffix,
+ * so that no Base64 String or full JSON String of the image is held in memory.
+ */
+public class Base64ImageBodyPublisher implements HttpRequest.BodyPublisher {
+
+    // multiple of 3 so that no padding is produced in the middle of the stream
+    private static final int CHUNK_SIZE = 3 * 1024;
+
+    private final byte[] prefix;
+    private final byte[] image;
+    private final int imageLength;
+    private final byte[] suffix;
+
+    /**
+     * @param prefix      bytes written before the image.
+     * @param image       buffer of the encoded image bytes.
+     * @param imageLength number of valid bytes in the buffer.
+     * @param suffix      bytes written after the image.
+     */
+    public Base64ImageBodyPublisher(byte[] prefix, byte[] image, int imageLength, byte[] suffix) {
+        this.prefix = prefix;
+        this.image = image;
+        this.imageLength = imageLength;
+        this.suffix = suffix;
+    }
+
+    /**
+     * @return length of the Base64 encoded image with padding.
+     */
+    private long getEncodedImageLength() {
+        return 4L * ((imageLength + 2) / 3);
+    }
+
+    /**
+     * @return a new input stream of the whole request body.
+     */
+    private InputStream newInputStream() {
+        return new SequenceInputStream(new SequenceInputStream(new ByteArrayInputStream(prefix),
+                new Base64InputStream()), new ByteArrayInputStream(suffix));
+    }
+
+    /**
+     * @return exact length of the request body.
+     */
+    @Override
+    public long contentLength() {
+        return prefix.length + getEncodedImageLength() + suffix.length;
+    }
+
+    /**
+     * Publish the request body, a new stream is created for every subscription (e.g. redirects).
+     *
+     * @param subscriber subscriber of the request body.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        HttpRequest.BodyPublishers.ofInputStream(this::newInputStream).subscribe(subscriber);
+    }
+
+    /**
+     * Input stream that encodes the image buffer chunk by chunk.
+     */
+    private final class Base64InputStream extends InputStream {
+
+        private final Base64.Encoder encoder = Base64.getEncoder();
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private final byte[] encodedChunk = new byte[CHUNK_SIZE / 3 * 4];
+
+        // creation time of the stream, and time spent in the encoder
+        private final long startNanos = System.nanoTime();
+        private long encodeNanos = 0;
+
+        private int imagePosition = 0;
+        private int encodedPosition = 0;
+        private int encodedLength = 0;
+
+        /**
+         * Encode the next chunk of the image.
+         *
+         * @return whether there is any encoded byte left.
+         */
+        private boolean fill() {
+
+            if (encodedPosition < encodedLength) {
+                return true;
+            }
+
+            if (imagePosition >= imageLength) {
+                if (imagePosition == imageLength) {
+                    // record once at the end of the image
+                    imagePosition++;
+                    Metrics.record("base64", encodeNanos);
+                    Metrics.recordSince("http_upload", startNanos);
+                }
+                return false;
+            }
+
+            var encodeStartNanos = System.nanoTime();
+            var length = Math.min(CHUNK_SIZE, imageLength - imagePosition);
+
+            if (length == CHUNK_SIZE) {
+                System.arraycopy(image, imagePosition, chunk, 0, length);
+                encodedLength = encoder.encode(chunk, encodedChunk);
+            } else {
+                // last chunk with padding
+                var lastChunk = new byte[length];
+                System.arraycopy(image, imagePosition, lastChunk, 0, length);
+                encodedLength = encoder.encode(lastChunk, encodedChunk);
+            }
+
+            imagePosition += length;
+            encodedPosition = 0;
+            encodeNanos += System.nanoTime() - encodeStartNanos;
+
+            return true;
+
+        }
+
+        @Override
+        public int read() {
+            return fill() ? encodedChunk[encodedPosition++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+
+            if (length == 0) {
+                return 0;
+            }
+
+            if (!fill()) {
+                return -1;
+            }
+
+            var count = Math.min(length, encodedLength - encodedPosition);
+            System.arraycopy(encodedChunk, encodedPosition, bytes, offset, count);
+            encodedPosition += count;
+
+            return count;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,215 @@
+package io;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import javax.imageio.ImageIO;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/**
+ * IO.BatchRecognition.java
+ * Headless batch mode recognising all images in a directory without the JavaFX toolkit.
+ * Results are streamed as JSON Lines, files with a successful result in the output are skipped on resume.
+ */
+public class BatchRecognition {
+
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of("png", "jpg", "jpeg", "bmp", "gif");
+
+    private final Path directory;
+    private final Path output;
+    private final int concurrency;
+
+    private final Recognition recognition = new Recognition();
+
+    /**
+     * @param directory   directory of the images, searched recursively.
+     * @param output      JSON Lines output file, appended if it exists.
+     * @param concurrency maximum number of requests in flight.
+     */
+    public BatchRecognition(Path directory, Path output, int concurrency) {
+        this.directory = directory;
+        this.output = output;
+        this.concurrency = Math.max(concurrency, 1);
+    }
+
+    /**
+     * @param path file path.
+     * @return whether the file extension is a supported image type.
+     */
+    private static boolean isImageFile(Path path) {
+        var name = path.getFileName().toString();
+        var index = name.lastIndexOf('.');
+        return index > 0 && IMAGE_EXTENSIONS.contains(name.substring(index + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return relative paths of the files completed without error in a previous run.
+     * @throws IOException if the output file cannot be read.
+     */
+    private Set<String> loadCompletedFiles() throws IOException {
+
+        var completedFileSet = new HashSet<String>();
+
+        if (!Files.exists(output)) {
+            return completedFileSet;
+        }
+
+        try (var lines = Files.lines(output, StandardCharsets.UTF_8)) {
+            lines.forEach(line -> {
+                try {
+                    var jsonObject = JsonParser.parseString(line).getAsJsonObject();
+                    if (!jsonObject.has("error") && jsonObject.has("file")) {
+                        completedFileSet.add(jsonObject.get("file").getAsString());
+                    }
+                } catch (JsonParseException | IllegalStateException ignored) {
+                    // partial line written before a crash
+                }
+            });
+        }
+
+        return completedFileSet;
+
+    }
+
+    /**
+     * Make sure the next appended line does not continue a partial line written before a crash.
+     *
+     * @throws IOException if the output file cannot be read or written.
+     */
+    private void terminateLastLine() throws IOException {
+
+        if (!Files.exists(output) || Files.size(output) == 0) {
+            return;
+        }
+
+        try (var file = new RandomAccessFile(output.toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            if (file.read() != '\n') {
+                file.write('\n');
+            }
+        }
+
+    }
+
+    /**
+     * @param file     relative path of the image.
+     * @param response recognition result, null if the image cannot be read or encoded.
+     * @return a JSON line of the result.
+     */
+    private static String toJsonLine(String file, Response response) {
+
+        var jsonObject = new JsonObject();
+        jsonObject.addProperty("file", file);
+
+        if (response == null) {
+            jsonObject.addProperty("error", IOUtils.UNEXPECTED_ERROR);
+        } else if (response.getError() != null) {
+            jsonObject.addProperty("error", response.getError());
+        } else {
+            jsonObject.addProperty("text", response.getText());
+            jsonObject.addProperty("confidence", response.getConfidence());
+            jsonObject.addProperty("mathml", response.getMathML());
+            jsonObject.addProperty("tsv", response.getTSV());
+        }
+
+        return jsonObject.toString();
+
+    }
+
+    /**
+     * Recognise all remaining images with at most the given number of requests in flight.
+     *
+     * @return number of failed images.
+     * @throws IOException          if the directory cannot be listed or the output cannot be written.
+     * @throws InterruptedException if interrupted while waiting for a free request slot.
+     */
+    public int run() throws IOException, InterruptedException {
+
+        List<Path> imageList;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            imageList = paths.filter(Files::isRegularFile).filter(BatchRecognition::isImageFile).sorted().collect(Collectors.toList());
+        }
+
+        var completedFileSet = loadCompletedFiles();
+        terminateLastLine();
+
+        var total = imageList.size();
+        var skipped = (int) imageList.stream().map(path -> directory.relativize(path).toString()).filter(completedFileSet::contains).count();
+        var finishedCount = new AtomicInteger(skipped);
+        var failedCount = new AtomicInteger();
+
+        System.err.println("Found " + total + " images, " + skipped + " already completed.");
+
+        var semaphore = new Semaphore(concurrency);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+
+            for (Path path : imageList) {
+
+                var file = directory.relativize(path).toString();
+                if (completedFileSet.contains(file)) {
+                    continue;
+                }
+
+                semaphore.acquire();
+
+                CompletableFuture<Response> future;
+                try {
+                    var bufferedImage = ImageIO.read(path.toFile());
+                    future = bufferedImage == null ? CompletableFuture.completedFuture(null) : recognition.recogniseAsync(bufferedImage);
+                } catch (IOException e) {
+                    future = CompletableFuture.completedFuture(new Response(e.getMessage()));
+                }
+
+                future.whenComplete((response, throwable) -> {
+                    var result = throwable == null ? response : new Response(throwable.getMessage());
+                    var line = toJsonLine(file, result);
+                    synchronized (writer) {
+                        try {
+                            writer.write(line);
+                            writer.write('\n');
+                            // flush every line so that a crash loses at most the lines in flight
+                            writer.flush();
+                        } catch (IOException e) {
+                            System.err.println(e.getMessage());
+                        }
+                    }
+                    if (result == null || result.getError() != null) {
+                        failedCount.incrementAndGet();
+                    }
+                    System.err.println("[" + finishedCount.incrementAndGet() + "/" + total + "] " + file);
+                    semaphore.release();
+                });
+
+            }
+
+            // wait for the requests in flight
+            semaphore.acquire(concurrency);
+
+        }
+
+        return failedCount.get();
+
+    }
+
+}
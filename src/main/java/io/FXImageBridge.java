@@ -0,0 +1,154 @@
+package io;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * IO.FXImageBridge.java
+ * Moves pixels between JavaFX images and AWT images with a single bulk copy, replacing SwingFXUtils.
+ * JavaFX images are read into pooled premultiplied ARGB arrays that back the AWT raster directly, so the encoder reads
+ * the same pixels without another full-frame copy or allocation.
+ */
+public final class FXImageBridge {
+
+    private static final int MAX_POOLED_BUFFERS = 4;
+    // 4K UHD, larger images are not pooled
+    private static final int MAX_POOLED_BUFFER_SIZE = 3840 * 2160;
+
+    private static final Queue<int[]> BUFFER_POOL = new ConcurrentLinkedQueue<>();
+
+    private static final int[] ARGB_MASKS = {0x00ff0000, 0x0000ff00, 0x000000ff, 0xff000000};
+
+    // premultiplied like the JavaFX images, so that reading the pixels needs no division
+    private static final ColorModel ARGB_PRE_COLOR_MODEL = new DirectColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+            32, ARGB_MASKS[0], ARGB_MASKS[1], ARGB_MASKS[2], ARGB_MASKS[3], true, DataBuffer.TYPE_INT);
+
+    private FXImageBridge() {
+    }
+
+    /**
+     * TYPE_INT_ARGB_PRE image backed by a pooled array, returned to the pool by release().
+     */
+    private static final class PooledImage extends BufferedImage {
+
+        private final AtomicBoolean isReleased = new AtomicBoolean(false);
+
+        private PooledImage(int[] buffer, int width, int height) {
+            super(ARGB_PRE_COLOR_MODEL, Raster.createPackedRaster(new DataBufferInt(buffer, width * height),
+                    width, height, width, ARGB_MASKS, null), true, null);
+        }
+
+    }
+
+    /**
+     * Read the pixels of the JavaFX image into a pooled array with one bulk read.
+     * The returned image must not be used after it is passed to release().
+     *
+     * @param image JavaFX image to be read.
+     * @return TYPE_INT_ARGB_PRE image sharing the pooled array, null if the image cannot be read.
+     */
+    public static BufferedImage fromFXImage(Image image) {
+
+        var pixelReader = image.getPixelReader();
+        if (pixelReader == null) {
+            return null;
+        }
+
+        var width = (int) image.getWidth();
+        var height = (int) image.getHeight();
+        var buffer = acquire(width * height);
+
+        pixelReader.getPixels(0, 0, width, height, PixelFormat.getIntArgbPreInstance(), buffer, 0, width);
+
+        return new PooledImage(buffer, width, height);
+
+    }
+
+    /**
+     * Return the array of an image created by fromFXImage() to the pool, other images are ignored.
+     *
+     * @param image image no longer used.
+     */
+    public static void release(BufferedImage image) {
+
+        if (!(image instanceof PooledImage) || !((PooledImage) image).isReleased.compareAndSet(false, true)) {
+            return;
+        }
+
+        var buffer = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        if (buffer.length <= MAX_POOLED_BUFFER_SIZE && BUFFER_POOL.size() < MAX_POOLED_BUFFERS) {
+            BUFFER_POOL.offer(buffer);
+        }
+
+    }
+
+    /**
+     * Write the pixels of the AWT image into a new JavaFX image.
+     * Packed integer ARGB images are written from their own array with one bulk write.
+     *
+     * @param bufferedImage AWT image to be written.
+     * @return JavaFX image of the same size.
+     */
+    public static Image toFXImage(BufferedImage bufferedImage) {
+
+        var width = bufferedImage.getWidth();
+        var height = bufferedImage.getHeight();
+        var writableImage = new WritableImage(width, height);
+        var pixelWriter = writableImage.getPixelWriter();
+
+        var type = bufferedImage.getType();
+        var raster = bufferedImage.getRaster();
+
+        if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_ARGB_PRE)
+                && raster.getDataBuffer() instanceof DataBufferInt && raster.getParent() == null
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+            var pixelFormat = type == BufferedImage.TYPE_INT_ARGB ?
+                    PixelFormat.getIntArgbInstance() : PixelFormat.getIntArgbPreInstance();
+            var dataBuffer = raster.getDataBuffer();
+            var scanline = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+            pixelWriter.setPixels(0, 0, width, height, pixelFormat, ((DataBufferInt) dataBuffer).getData(),
+                    dataBuffer.getOffset(), scanline);
+        } else {
+            // converted row by row by the color model
+            var row = new int[width];
+            for (var y = 0; y < height; y++) {
+                bufferedImage.getRGB(0, y, width, 1, row, 0, width);
+                pixelWriter.setPixels(0, y, width, 1, PixelFormat.getIntArgbInstance(), row, 0, width);
+            }
+        }
+
+        return writableImage;
+
+    }
+
+    /**
+     * @param size number of pixels.
+     * @return pooled array of at least the size, or a new one.
+     */
+    private static int[] acquire(int size) {
+
+        for (int[] buffer : BUFFER_POOL) {
+            if (buffer.length >= size && BUFFER_POOL.remove(buffer)) {
+                return buffer;
+            }
+        }
+
+        return new int[size];
+
+    }
+
+}
@@ -0,0 +1,851 @@
+package io;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * IO.HistoryStore.java
+ * Persistent history of the successful OCR results with their thumbnails.
+ * Records are appended to a single log file, and a compact index of fixed-size records locates them by position,
+ * so that opening the store only reads the index. An in-memory inverted index of the LaTeX tokens serves searches,
+ * and is saved on shutdown so that only the records appended since the last save are tokenised again.
+ */
+public class HistoryStore {
+
+    private static final Path HISTORY_DIRECTORY = Paths.get(System.getProperty("user.home"), ".img2latex", "history");
+    private static final Path LOG_PATH = HISTORY_DIRECTORY.resolve("history.log");
+    private static final Path INDEX_PATH = HISTORY_DIRECTORY.resolve("history.idx");
+    private static final Path TOKEN_INDEX_PATH = HISTORY_DIRECTORY.resolve("tokens.idx");
+
+    private static final int RECORD_MAGIC = 0x49324C48;
+    private static final int TOKEN_INDEX_MAGIC = 0x49324C54;
+    // magic and payload length before each payload in the log
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private static final int KEY_SIZE = 32;
+    // log offset, record length, timestamp and key of each index record
+    private static final int INDEX_RECORD_SIZE = Long.BYTES + Integer.BYTES + Long.BYTES + KEY_SIZE;
+
+    private static final int THUMBNAIL_WIDTH = 96;
+    private static final int THUMBNAIL_HEIGHT = 32;
+    private static final int MAX_TOKEN_LENGTH = 64;
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 2;
+
+    // single writer thread, appends are sequential and never block the request path
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "history-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // the following fields are guarded by the class lock, and only written on the writer thread
+    private static FileChannel logChannel;
+    private static FileChannel indexChannel;
+    private static long logSize = 0;
+    private static int size = 0;
+    private static long[] offsets = new long[1024];
+    private static int[] lengths = new int[1024];
+    private static byte[] keys = new byte[1024 * KEY_SIZE];
+    // id of the latest entry by the first 8 bytes of the key, verified against the full key
+    private static final Map<Long, Integer> KEY_MAP = new HashMap<>();
+
+    // the following fields are only accessed on the writer thread, or after it is terminated
+    // ascending ids of the entries containing each token
+    private static final Map<String, Postings> TOKEN_MAP = new HashMap<>();
+    // number of entries covered by the saved token index
+    private static int savedTokenIndexSize = 0;
+
+    // the store is opened in the background when the class is loaded
+    private static final CompletableFuture<Void> LOADED = CompletableFuture.runAsync(HistoryStore::load, WRITER);
+
+    static {
+        // queued before any append or search
+        WRITER.execute(HistoryStore::loadTokenIndex);
+    }
+
+    /**
+     * A stored result with its thumbnail.
+     */
+    public static final class Entry {
+
+        private final int id;
+        private final long timestamp;
+        private final Response response;
+        private final byte[] thumbnail;
+
+        private Entry(int id, long timestamp, Response response, byte[] thumbnail) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.response = response;
+            this.thumbnail = thumbnail;
+        }
+
+        /**
+         * @return position in the store, starting from 0.
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return time of the recognition in milliseconds since the epoch.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return stored result.
+         */
+        public Response getResponse() {
+            return response;
+        }
+
+        /**
+         * @return PNG encoded thumbnail, empty if not available.
+         */
+        public byte[] getThumbnail() {
+            return thumbnail;
+        }
+
+    }
+
+    /**
+     * Growable array of ascending entry ids.
+     */
+    private static final class Postings {
+
+        private int[] ids = new int[4];
+        private int size = 0;
+
+        private void add(int id) {
+            // a token appearing several times in an entry is only added once
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        private boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+    }
+
+    /**
+     * Append a successful result to the store on the writer thread, error responses are not stored.
+     * The thumbnail is made on the calling thread, so the image is not used once this method returns.
+     *
+     * @param key      key of the image, see IO.ResultCache.getKey().
+     * @param image    recognised image, used for the thumbnail.
+     * @param response result to be stored.
+     */
+    public static void append(String key, BufferedImage image, Response response) {
+
+        if (response == null || response.getError() != null) {
+            return;
+        }
+
+        var timestamp = System.currentTimeMillis();
+        var thumbnail = getThumbnail(image);
+
+        try {
+            WRITER.execute(() -> write(hexToBytes(key), timestamp, thumbnail, response));
+        } catch (RejectedExecutionException ignored) {
+            // the app is quitting
+        }
+
+    }
+
+    /**
+     * Look up the latest result of an image, used to reuse past results without sending a request.
+     *
+     * @param key key of the image, see IO.ResultCache.getKey().
+     * @return stored result, null if not found.
+     */
+    public static Response get(String key) {
+
+        if (!awaitLoaded()) {
+            return null;
+        }
+
+        var keyBytes = hexToBytes(key);
+        int id;
+
+        synchronized (HistoryStore.class) {
+            var candidate = KEY_MAP.get(ByteBuffer.wrap(keyBytes).getLong());
+            if (candidate == null || !Arrays.equals(keys, candidate * KEY_SIZE, (candidate + 1) * KEY_SIZE,
+                    keyBytes, 0, KEY_SIZE)) {
+                return null;
+            }
+            id = candidate;
+        }
+
+        var entry = read(id);
+
+        return entry == null ? null : entry.response;
+
+    }
+
+    /**
+     * Search the LaTeX results on the writer thread.
+     *
+     * @param query tokens to be found, see tokenize().
+     * @param limit maximum number of entries.
+     * @return a future of the matching entries, newest first.
+     */
+    public static CompletableFuture<List<Entry>> search(String query, int limit) {
+        try {
+            return CompletableFuture.supplyAsync(() -> find(query, limit), WRITER);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+    }
+
+    /**
+     * Find the entries containing all the tokens of the query, on the writer thread.
+     *
+     * @param query tokens to be found, the latest entries are returned if there is no token.
+     * @param limit maximum number of entries.
+     * @return matching entries, newest first.
+     */
+    private static List<Entry> find(String query, int limit) {
+
+        if (!awaitLoaded() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        var ids = new ArrayList<Integer>();
+
+        var postingsList = new ArrayList<Postings>();
+        for (String token : tokenize(query)) {
+            var postings = TOKEN_MAP.get(token);
+            if (postings == null) {
+                return Collections.emptyList();
+            }
+            postingsList.add(postings);
+        }
+
+        if (postingsList.isEmpty()) {
+            for (var id = getSize() - 1; id >= 0 && ids.size() < limit; id--) {
+                ids.add(id);
+            }
+        } else {
+            // walk the shortest postings newest first, and probe the others
+            postingsList.sort(Comparator.comparingInt(postings -> postings.size));
+            var shortest = postingsList.get(0);
+            for (var i = shortest.size - 1; i >= 0 && ids.size() < limit; i--) {
+                var id = shortest.ids[i];
+                var isMatched = true;
+                for (var j = 1; j < postingsList.size() && isMatched; j++) {
+                    isMatched = postingsList.get(j).contains(id);
+                }
+                if (isMatched) {
+                    ids.add(id);
+                }
+            }
+        }
+
+        var entries = new ArrayList<Entry>(ids.size());
+        for (int id : ids) {
+            var entry = read(id);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+
+        return entries;
+
+    }
+
+    /**
+     * @return number of stored entries, 0 if the store is not opened yet.
+     */
+    public static int getSize() {
+        synchronized (HistoryStore.class) {
+            return size;
+        }
+    }
+
+    /**
+     * Split LaTeX into control sequences, words and numbers, other symbols are ignored.
+     *
+     * @param latex text to be tokenised.
+     * @return distinct tokens in order of appearance.
+     */
+    public static Set<String> tokenize(String latex) {
+
+        var tokens = new LinkedHashSet<String>();
+        if (latex == null) {
+            return tokens;
+        }
+
+        var length = latex.length();
+        var i = 0;
+
+        while (i < length) {
+
+            var c = latex.charAt(i);
+            var start = i;
+
+            if (c == '\\' && i + 1 < length) {
+                // control word such as \frac, or control symbol such as \{
+                i++;
+                if (Character.isLetter(latex.charAt(i))) {
+                    while (i < length && Character.isLetter(latex.charAt(i))) {
+                        i++;
+                    }
+                } else {
+                    i++;
+                }
+            } else if (Character.isLetter(c)) {
+                while (i < length && Character.isLetter(latex.charAt(i))) {
+                    i++;
+                }
+            } else if (Character.isDigit(c)) {
+                while (i < length && Character.isDigit(latex.charAt(i))) {
+                    i++;
+                }
+            } else {
+                i++;
+                continue;
+            }
+
+            tokens.add(latex.substring(start, Math.min(i, start + MAX_TOKEN_LENGTH)));
+
+        }
+
+        return tokens;
+
+    }
+
+    /**
+     * Wait for the pending appends, then save the token index and close the files.
+     */
+    public static void shutdown() {
+
+        WRITER.shutdown();
+
+        var isTerminated = false;
+        try {
+            isTerminated = WRITER.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (HistoryStore.class) {
+
+            // the token index is only consistent once the writer is terminated
+            if (isTerminated && size > savedTokenIndexSize) {
+                saveTokenIndex();
+            }
+
+            try {
+                if (logChannel != null) {
+                    logChannel.close();
+                }
+                if (indexChannel != null) {
+                    indexChannel.close();
+                }
+            } catch (IOException ignored) {
+                // nothing to be done while quitting
+            }
+
+            logChannel = null;
+            indexChannel = null;
+
+        }
+
+    }
+
+    /**
+     * @return whether the store is opened.
+     */
+    private static boolean awaitLoaded() {
+        try {
+            LOADED.join();
+        } catch (RuntimeException e) {
+            return false;
+        }
+        synchronized (HistoryStore.class) {
+            return logChannel != null;
+        }
+    }
+
+    /**
+     * Open the files, drop incomplete records, and recover the records missing from the index.
+     */
+    private static synchronized void load() {
+
+        try {
+
+            Files.createDirectories(HISTORY_DIRECTORY);
+            logChannel = FileChannel.open(LOG_PATH, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            indexChannel = FileChannel.open(INDEX_PATH, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+
+            logSize = logChannel.size();
+
+            // read the index records sequentially
+            var indexSize = indexChannel.size() / INDEX_RECORD_SIZE * INDEX_RECORD_SIZE;
+            try (var inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(INDEX_PATH)))) {
+                for (long position = 0; position < indexSize; position += INDEX_RECORD_SIZE) {
+                    var offset = inputStream.readLong();
+                    var length = inputStream.readInt();
+                    // the timestamp is read with the record
+                    inputStream.skipBytes(Long.BYTES);
+                    var key = inputStream.readNBytes(KEY_SIZE);
+                    // the log may have been truncated after the index was written
+                    if (offset + length > logSize) {
+                        break;
+                    }
+                    addIndexRecord(offset, length, key);
+                }
+            }
+            indexChannel.truncate((long) size * INDEX_RECORD_SIZE);
+
+            // the app may have quit between a log write and its index write
+            recoverIndex();
+
+        } catch (IOException e) {
+            logChannel = null;
+            indexChannel = null;
+        }
+
+    }
+
+    /**
+     * Index the complete records after the last indexed one, and truncate the log at the first broken record.
+     */
+    private static void recoverIndex() throws IOException {
+
+        var position = size == 0 ? 0 : offsets[size - 1] + lengths[size - 1];
+
+        while (position < logSize) {
+
+            var record = readRecord(position, (int) Math.min(Integer.MAX_VALUE, logSize - position), size);
+            if (record == null) {
+                break;
+            }
+
+            appendIndexRecord(position, record.length, record.entry.timestamp, record.key);
+            position += record.length;
+
+        }
+
+        if (position < logSize) {
+            logChannel.truncate(position);
+            logSize = position;
+        }
+
+    }
+
+    /**
+     * Load the saved token index if it matches the store, and tokenise the entries appended since it was saved.
+     */
+    private static void loadTokenIndex() {
+
+        if (!awaitLoaded()) {
+            return;
+        }
+
+        var size = getSize();
+        var indexedSize = 0;
+
+        try (var inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(TOKEN_INDEX_PATH)))) {
+            if (inputStream.readInt() == TOKEN_INDEX_MAGIC) {
+                var entryCount = inputStream.readInt();
+                var tokenCount = inputStream.readInt();
+                if (entryCount <= size) {
+                    for (var i = 0; i < tokenCount; i++) {
+                        var token = inputStream.readUTF();
+                        var postings = new Postings();
+                        postings.size = inputStream.readInt();
+                        postings.ids = new int[Math.max(postings.size, 4)];
+                        for (var j = 0; j < postings.size; j++) {
+                            postings.ids[j] = inputStream.readInt();
+                        }
+                        TOKEN_MAP.put(token, postings);
+                    }
+                    indexedSize = entryCount;
+                }
+            }
+        } catch (IOException e) {
+            // missing or broken, rebuilt from the log
+            TOKEN_MAP.clear();
+            indexedSize = 0;
+        }
+
+        savedTokenIndexSize = indexedSize;
+
+        for (var id = indexedSize; id < size; id++) {
+            var entry = read(id);
+            if (entry != null) {
+                addTokens(id, entry.response.getText());
+            }
+        }
+
+    }
+
+    /**
+     * Write the token index to a temporary file and move it in place.
+     */
+    private static void saveTokenIndex() {
+
+        try {
+            var temporaryPath = Files.createTempFile(HISTORY_DIRECTORY, "tokens", ".tmp");
+            try (var outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+                outputStream.writeInt(TOKEN_INDEX_MAGIC);
+                outputStream.writeInt(size);
+                outputStream.writeInt(TOKEN_MAP.size());
+                for (var tokenEntry : TOKEN_MAP.entrySet()) {
+                    var postings = tokenEntry.getValue();
+                    outputStream.writeUTF(tokenEntry.getKey());
+                    outputStream.writeInt(postings.size);
+                    for (var i = 0; i < postings.size; i++) {
+                        outputStream.writeInt(postings.ids[i]);
+                    }
+                }
+            }
+            Files.move(temporaryPath, TOKEN_INDEX_PATH, StandardCopyOption.REPLACE_EXISTING);
+            savedTokenIndexSize = size;
+        } catch (IOException ignored) {
+            // rebuilt from the log on the next start
+        }
+
+    }
+
+    /**
+     * Append the record to the log, then its index record to the index, on the writer thread.
+     */
+    private static synchronized void write(byte[] key, long timestamp, byte[] thumbnail, Response response) {
+
+        if (logChannel == null) {
+            return;
+        }
+
+        try {
+
+            var payload = new ByteArrayOutputStream();
+            var outputStream = new DataOutputStream(payload);
+
+            outputStream.writeLong(timestamp);
+            outputStream.write(key);
+            outputStream.writeDouble(response.getConfidence());
+            writeString(outputStream, response.getText());
+
+            var data = response.getData();
+            outputStream.writeInt(data.size());
+            for (Response.DataEntry dataEntry : data) {
+                writeString(outputStream, dataEntry.getType());
+                writeString(outputStream, dataEntry.getValue());
+            }
+
+            outputStream.writeInt(thumbnail.length);
+            outputStream.write(thumbnail);
+
+            var buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.size());
+            buffer.putInt(RECORD_MAGIC).putInt(payload.size()).put(payload.toByteArray()).flip();
+
+            var offset = logSize;
+            while (buffer.hasRemaining()) {
+                logChannel.write(buffer, offset + buffer.position());
+            }
+            logSize += buffer.limit();
+
+            appendIndexRecord(offset, buffer.limit(), timestamp, key);
+            addTokens(size - 1, response.getText());
+
+        } catch (IOException ignored) {
+            // the history is best effort
+        }
+
+    }
+
+    /**
+     * Write the index record and add it to memory.
+     */
+    private static void appendIndexRecord(long offset, int length, long timestamp, byte[] key) throws IOException {
+
+        var buffer = ByteBuffer.allocate(INDEX_RECORD_SIZE);
+        buffer.putLong(offset).putInt(length).putLong(timestamp).put(key).flip();
+
+        var position = (long) size * INDEX_RECORD_SIZE;
+        while (buffer.hasRemaining()) {
+            indexChannel.write(buffer, position + buffer.position());
+        }
+
+        addIndexRecord(offset, length, key);
+
+    }
+
+    /**
+     * Add the index record to memory.
+     */
+    private static void addIndexRecord(long offset, int length, byte[] key) {
+
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+            keys = Arrays.copyOf(keys, size * 2 * KEY_SIZE);
+        }
+
+        offsets[size] = offset;
+        lengths[size] = length;
+        System.arraycopy(key, 0, keys, size * KEY_SIZE, KEY_SIZE);
+        KEY_MAP.put(ByteBuffer.wrap(key).getLong(), size);
+
+        size++;
+
+    }
+
+    /**
+     * @param id   id of the entry.
+     * @param text LaTeX result of the entry.
+     */
+    private static void addTokens(int id, String text) {
+        for (String token : tokenize(text)) {
+            TOKEN_MAP.computeIfAbsent(token, key -> new Postings()).add(id);
+        }
+    }
+
+    /**
+     * @param id id of the entry.
+     * @return entry read from the log, null if broken.
+     */
+    private static Entry read(int id) {
+
+        long offset;
+        int length;
+
+        synchronized (HistoryStore.class) {
+            if (id >= size || logChannel == null) {
+                return null;
+            }
+            offset = offsets[id];
+            length = lengths[id];
+        }
+
+        try {
+            var record = readRecord(offset, length, id);
+            return record == null ? null : record.entry;
+        } catch (IOException e) {
+            return null;
+        }
+
+    }
+
+    /**
+     * Entry with its key and its length in the log.
+     */
+    private static final class Record {
+
+        private final Entry entry;
+        private final byte[] key;
+        private final int length;
+
+        private Record(Entry entry, byte[] key, int length) {
+            this.entry = entry;
+            this.key = key;
+            this.length = length;
+        }
+
+    }
+
+    /**
+     * Read a record with a positional read, which is safe while the writer is appending.
+     *
+     * @param position      position of the record in the log.
+     * @param maximumLength number of bytes available from the position.
+     * @param id            id of the entry.
+     * @return record, null if incomplete or broken.
+     */
+    private static Record readRecord(long position, int maximumLength, int id) throws IOException {
+
+        if (maximumLength < RECORD_HEADER_SIZE) {
+            return null;
+        }
+
+        var header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(header, position);
+        header.flip();
+
+        var magic = header.getInt();
+        var payloadLength = header.getInt();
+        if (magic != RECORD_MAGIC || payloadLength < 0 || payloadLength > maximumLength - RECORD_HEADER_SIZE) {
+            return null;
+        }
+
+        var payload = ByteBuffer.allocate(payloadLength);
+        readFully(payload, position + RECORD_HEADER_SIZE);
+
+        try (var inputStream = new DataInputStream(new ByteArrayInputStream(payload.array()))) {
+
+            var timestamp = inputStream.readLong();
+            var key = inputStream.readNBytes(KEY_SIZE);
+            var confidence = inputStream.readDouble();
+            var text = readString(inputStream);
+
+            var dataCount = inputStream.readInt();
+            var data = new ArrayList<Response.DataEntry>(dataCount);
+            for (var i = 0; i < dataCount; i++) {
+                data.add(new Response.DataEntry(readString(inputStream), readString(inputStream)));
+            }
+
+            var thumbnail = inputStream.readNBytes(inputStream.readInt());
+
+            var response = new Response(null, text, confidence, data);
+            return new Record(new Entry(id, timestamp, response, thumbnail), key, RECORD_HEADER_SIZE + payloadLength);
+
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+
+    }
+
+    /**
+     * @param buffer   buffer to be filled.
+     * @param position position in the log.
+     */
+    private static void readFully(ByteBuffer buffer, long position) throws IOException {
+
+        FileChannel channel;
+        synchronized (HistoryStore.class) {
+            channel = logChannel;
+        }
+
+        if (channel == null) {
+            throw new IOException("history store is closed");
+        }
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of the history log");
+            }
+        }
+
+    }
+
+    /**
+     * Write a string of any length as its UTF-8 byte count and bytes, null as -1.
+     */
+    private static void writeString(DataOutputStream outputStream, String string) throws IOException {
+
+        if (string == null) {
+            outputStream.writeInt(-1);
+            return;
+        }
+
+        var bytes = string.getBytes(StandardCharsets.UTF_8);
+        outputStream.writeInt(bytes.length);
+        outputStream.write(bytes);
+
+    }
+
+    /**
+     * @return string written by writeString().
+     */
+    private static String readString(DataInputStream inputStream) throws IOException {
+
+        var length = inputStream.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        var bytes = inputStream.readNBytes(length);
+        if (bytes.length < length) {
+            throw new IOException("truncated string");
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+
+    }
+
+    /**
+     * Scale the image down to fit in THUMBNAIL_WIDTH * THUMBNAIL_HEIGHT, and encode it as PNG.
+     *
+     * @param image recognised image.
+     * @return PNG encoded thumbnail, empty if the image cannot be encoded.
+     */
+    private static byte[] getThumbnail(BufferedImage image) {
+
+        if (image == null) {
+            return new byte[0];
+        }
+
+        var scale = Math.min(1, Math.min((double) THUMBNAIL_WIDTH / image.getWidth(),
+                (double) THUMBNAIL_HEIGHT / image.getHeight()));
+        var width = Math.max((int) (image.getWidth() * scale), 1);
+        var height = Math.max((int) (image.getHeight() * scale), 1);
+
+        var thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        var graphics2D = thumbnail.createGraphics();
+        graphics2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics2D.setColor(Color.white);
+        graphics2D.fillRect(0, 0, width, height);
+        graphics2D.drawImage(image, 0, 0, width, height, null);
+        graphics2D.dispose();
+
+        var outputStream = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(thumbnail, "png", outputStream);
+        } catch (IOException e) {
+            return new byte[0];
+        }
+
+        return outputStream.toByteArray();
+
+    }
+
+    /**
+     * @param hex hex string of the key.
+     * @return KEY_SIZE bytes of the key, zero padded.
+     */
+    private static byte[] hexToBytes(String hex) {
+
+        var bytes = new byte[KEY_SIZE];
+        for (var i = 0; i < KEY_SIZE && 2 * i + 1 < hex.length(); i++) {
+            bytes[i] = (byte) (Character.digit(hex.charAt(2 * i), 16) << 4 | Character.digit(hex.charAt(2 * i + 1), 16));
+        }
+
+        return bytes;
+
+    }
+
+}
@@ -0,0 +1,124 @@
+package io;
+
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * IO.HttpClientRegistry.java
+ * Keeps a long-lived HttpClient keyed by the proxy config.
+ * The client (and its warm HTTP/2 connections to the API endpoint) is shared by all requests,
+ * and is only rebuilt when the proxy settings in IO.PreferenceHelper actually change.
+ */
+public class HttpClientRegistry {
+
+    private static final String DIRECT_KEY = "DIRECT";
+
+    // number of clients built since the app starts
+    private static final AtomicLong BUILD_COUNT = new AtomicLong();
+    // number of requests served by an already built client since the app starts
+    private static final AtomicLong TOTAL_REUSE_COUNT = new AtomicLong();
+
+    private static volatile ClientEntry currentEntry;
+
+    /**
+     * Registry entry of a built client and the proxy key it was built for.
+     */
+    private static final class ClientEntry {
+
+        private final String key;
+        private final HttpClient httpClient;
+        private final AtomicLong requestCount = new AtomicLong();
+
+        private ClientEntry(String key, HttpClient httpClient) {
+            this.key = key;
+            this.httpClient = httpClient;
+        }
+
+    }
+
+    /**
+     * @param proxyConfig proxy config, null if no proxy is used.
+     * @return registry key of the proxy config.
+     */
+    private static String getKey(ProxyConfig proxyConfig) {
+        return proxyConfig == null ? DIRECT_KEY : proxyConfig.getHostname() + ":" + proxyConfig.getPort();
+    }
+
+    /**
+     * Build a new HttpClient with HTTP version 2 first, then HTTP version 1.1.
+     * Default protocols: [TLSv1.3, TLSv1.2].
+     *
+     * @param proxyConfig proxy config, null if no proxy is used.
+     * @return a new HttpClient.
+     */
+    private static HttpClient buildClient(ProxyConfig proxyConfig) {
+
+        var builder = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2);
+
+        if (proxyConfig != null) {
+            builder.proxy(ProxySelector.of(new InetSocketAddress(proxyConfig.getHostname(), proxyConfig.getPort())));
+        }
+
+        return builder.build();
+
+    }
+
+    /**
+     * Get the shared HttpClient for the given proxy config.
+     * A new client is only built if the proxy config differs from the one of the current client.
+     *
+     * @param proxyConfig valid proxy config, null if no proxy is used.
+     * @return shared HttpClient.
+     */
+    public static HttpClient getClient(ProxyConfig proxyConfig) {
+
+        var key = getKey(proxyConfig);
+        var entry = currentEntry;
+
+        if (entry == null || !entry.key.equals(key)) {
+            synchronized (HttpClientRegistry.class) {
+                entry = currentEntry;
+                // proxy settings changed since the last request
+                if (entry == null || !entry.key.equals(key)) {
+                    entry = new ClientEntry(key, buildClient(proxyConfig));
+                    currentEntry = entry;
+                    BUILD_COUNT.incrementAndGet();
+                }
+            }
+        }
+
+        // every request after the first one reuses the client and its connections
+        if (entry.requestCount.getAndIncrement() > 0) {
+            TOTAL_REUSE_COUNT.incrementAndGet();
+        }
+
+        return entry.httpClient;
+
+    }
+
+    /**
+     * @return number of HttpClients built since the app starts.
+     */
+    public static long getBuildCount() {
+        return BUILD_COUNT.get();
+    }
+
+    /**
+     * @return number of requests served by the current client after its first one.
+     */
+    public static long getCurrentReuseCount() {
+        var entry = currentEntry;
+        return entry == null ? 0 : Math.max(entry.requestCount.get() - 1, 0);
+    }
+
+    /**
+     * @return number of requests served by an already built client since the app starts.
+     */
+    public static long getTotalReuseCount() {
+        return TOTAL_REUSE_COUNT.get();
+    }
+
+}
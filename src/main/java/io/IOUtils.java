@@ -1,13 +1,9 @@
 package io;
 
-import javafx.scene.image.Image;
-
 import java.io.IOException;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.Date;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -22,8 +18,12 @@ public class IOUtils {
     public static final String INVALID_CREDENTIALS_ERROR = "Invalid credentials";
     public static final String INVALID_PROXY_CONFIG_ERROR = "Invalid proxy config";
     public static final String NO_IMAGE_FOUND_IN_THE_CLIPBOARD_ERROR = "No image found in the clipboard";
+    public static final String TOO_MANY_PENDING_SUBMISSIONS_ERROR = "Too many pending submissions";
+    public static final String INVALID_API_URL_ERROR = "Invalid API endpoint";
 
-    public static final String API_URL = "https://api.mathpix.com/v3/text";
+    public static final String DEFAULT_API_URL = "https://api.mathpix.com/v3/text";
+    // overrides the endpoint in the preferences, for example a local mock server
+    public static final String API_URL_PROPERTY = "img2latex.api.url";
     public static final String MATHPIX_DASHBOARD_URL = "https://dashboard.mathpix.com/";
     public static final String GITHUB_RELEASES_URL = "https://github.com/blaisewang/img2latex-mathpix/releases";
 
@@ -73,29 +73,6 @@ public class IOUtils {
 
     }
 
-    /**
-     * Execute the OCR request in Java concurrent way.
-     *
-     * @param image image to be recognised.
-     * @return recognised result.
-     */
-    public static Response concurrentCall(Recognition recognition, Image image) {
-
-        var executor = Executors.newSingleThreadExecutor();
-
-        if (recognition.setSrcParameters(image)) {
-            var result = executor.submit(recognition);
-            try {
-                return result.get();
-            } catch (InterruptedException | ExecutionException e) {
-                return null;
-            }
-        }
-
-        return null;
-
-    }
-
     /**
      * @return whether the API credential config is valid.
      */
@@ -131,72 +108,71 @@ public class IOUtils {
      * @return is text all wrapped.
      */
     public static boolean isTextAllWrapped(String string) {
-
-        if (!string.startsWith("\\(")) {
-            return false;
-        }
-
-        var rIndex = string.indexOf("\\)");
-
-        while (rIndex < string.length() - 2) {
-            var lIndex = string.indexOf("\\(", rIndex);
-            if (rIndex == -1 || lIndex == -1) {
-                return false;
-            }
-            if (string.substring(rIndex + 2, lIndex).trim().length() > 0) {
-                return false;
-            }
-            rIndex = string.indexOf("\\)", rIndex + 1);
-        }
-
-        return true;
-
+        return LaTeXFormatter.isTextAllWrapped(string);
     }
 
     /**
-     * Shadow method of formatHelper()
-     *
      * @param string         string to be formatted.
      * @param leftDelimiter  prefix.
      * @param rightDelimiter postfix.
-     * @return formatted string.
+     * @return formatted string with multiple spaces replaced with single spaces.
      */
-    private static String formatHandler(String string, String leftDelimiter, String rightDelimiter) {
+    public static String formatHelper(String string, String leftDelimiter, String rightDelimiter) {
+        return LaTeXFormatter.format(string, leftDelimiter, rightDelimiter);
+    }
 
-        String lDelimiter;
-        String rDelimiter;
+    /**
+     * @return left and right delimiters of the selected second formatting option.
+     */
+    private static String[] getSecondDelimiters() {
 
-        if ("$".equals(leftDelimiter)) {
-            lDelimiter = leftDelimiter;
-            rDelimiter = rightDelimiter;
-        } else {
-            lDelimiter = leftDelimiter + "\n";
-            rDelimiter = "\n" + rightDelimiter;
-        }
+        var option = PreferenceHelper.getSecondResultFormattingOption();
 
-        if (isTextAllWrapped(string)) {
-            return string.replace("\\(", lDelimiter).replace("\\)", rDelimiter);
-        }
+        // default for option 2 and others
+        return switch (option) {
+            case 0 -> new String[]{"\\begin{equation*}", "\\end{equation*}"};
+            case 1 -> new String[]{"\\begin{align*}", "\\end{align*}"};
+            case 3 -> new String[]{"\\[", "\\]"};
+            default -> new String[]{"$$", "$$"};
+        };
 
-        if ("$".equals(leftDelimiter)) {
-            lDelimiter = "\\[\n";
-            rDelimiter = "\n\\]";
-        }
+    }
 
-        return string.replace("\\(", "$").replace("\\)", "$").
-                replace("\\[\n", "\\[").replace("\n\\]", "\\]").
-                replace("\\[", lDelimiter).replace("\\]", rDelimiter);
+    /**
+     * @return left and right delimiters of the selected third formatting option.
+     */
+    private static String[] getThirdDelimiters() {
+
+        var option = PreferenceHelper.getThirdResultFormattingOption();
+
+        // default for option 0 and others
+        return switch (option) {
+            case 1 -> new String[]{"\\begin{align}", "\\end{align}"};
+            case 2 -> new String[]{"$", "$"};
+            default -> new String[]{"\\begin{equation}", "\\end{equation}"};
+        };
 
     }
 
     /**
-     * @param string         string to be formatted.
-     * @param leftDelimiter  prefix.
-     * @param rightDelimiter postfix.
-     * @return formatted string with multiple spaces replaced with single spaces.
+     * Format the original recognised result with the selected second and third formatting options in a single pass.
+     *
+     * @param result recognised result.
+     * @return the second and the third formatted results, null if the original result is null.
      */
-    public static String formatHelper(String string, String leftDelimiter, String rightDelimiter) {
-        return formatHandler(string, leftDelimiter, rightDelimiter).replaceAll("( )+", " ");
+    public static String[] resultsFormatter(String result) {
+
+        // return null if the original result is null
+        if (result == null) {
+            return null;
+        }
+
+        var secondDelimiters = getSecondDelimiters();
+        var thirdDelimiters = getThirdDelimiters();
+
+        return LaTeXFormatter.format(result, new String[]{secondDelimiters[0], thirdDelimiters[0]},
+                new String[]{secondDelimiters[1], thirdDelimiters[1]});
+
     }
 
     /**
@@ -212,15 +188,10 @@ public class IOUtils {
             return null;
         }
 
-        var option = PreferenceHelper.getSecondResultFormattingOption();
+        var delimiters = getSecondDelimiters();
+
+        return formatHelper(result, delimiters[0], delimiters[1]);
 
-        // default for option 2 and others
-        return switch (option) {
-            case 0 -> formatHelper(result, "\\begin{equation*}", "\\end{equation*}");
-            case 1 -> formatHelper(result, "\\begin{align*}", "\\end{align*}");
-            case 3 -> formatHelper(result, "\\[", "\\]");
-            default -> formatHelper(result, "$$", "$$");
-        };
     }
 
     /**
@@ -236,16 +207,10 @@ public class IOUtils {
             return null;
         }
 
-        var option = PreferenceHelper.getThirdResultFormattingOption();
+        var delimiters = getThirdDelimiters();
 
-        // default for option 0 and others
-        return switch (option) {
-            case 1 -> formatHelper(result, "\\begin{align}", "\\end{align}");
-            case 2 -> formatHelper(result, "$", "$");
-            default -> formatHelper(result, "\\begin{equation}", "\\end{equation}");
-        };
+        return formatHelper(result, delimiters[0], delimiters[1]);
 
     }
 
-
 }
@@ -0,0 +1,461 @@
+package io;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+
+/**
+ * IO.ImageCodec.java
+ * Image formats of the request, chosen per image from statistics of a sample of its pixels.
+ * Few colors are written as palette PNG, large photo-like images as JPEG and everything else as lossless PNG.
+ */
+public enum ImageCodec {
+
+    PNG("image/png", "png"), PALETTE_PNG("image/png", "png"), JPEG("image/jpeg", "jpg");
+
+    // selection options of the preferences
+    public static final int AUTO_OPTION = 0;
+    public static final int PNG_OPTION = 1;
+    public static final int PALETTE_PNG_OPTION = 2;
+    public static final int JPEG_OPTION = 3;
+
+    // at most this number of pixels are sampled for the selection
+    private static final int MAX_SAMPLED_PIXELS = 1 << 14;
+    private static final int MAX_PALETTE_SIZE = 256;
+
+    // JPEG only pays off on large images with noisy luminance such as photos and scans
+    private static final int JPEG_MIN_PIXELS = 512 * 512;
+    private static final double JPEG_MIN_ENTROPY_BITS = 6.0;
+
+    // fixed palette of a 6x6x6 color cube and 40 gray levels, lossy, only used when palette PNG is explicitly chosen
+    private static final int CUBE_LEVELS = 6;
+    private static final int GRAY_LEVELS = MAX_PALETTE_SIZE - CUBE_LEVELS * CUBE_LEVELS * CUBE_LEVELS;
+    private static final int GRAY_TOLERANCE = 12;
+
+    private final String mimeType;
+    private final String fileExtension;
+    private final String metricName;
+
+    ImageCodec(String mimeType, String fileExtension) {
+        this.mimeType = mimeType;
+        this.fileExtension = fileExtension;
+        metricName = name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return MIME type of the data URL.
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * @return extension of the file name of a multipart upload.
+     */
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    /**
+     * @return lower case name used in the metric names.
+     */
+    public String getMetricName() {
+        return metricName;
+    }
+
+    /**
+     * Statistics of the sampled pixels.
+     */
+    static final class Statistics {
+
+        private final int colorCount;
+        private final boolean isOpaque;
+        private final double entropyBits;
+
+        private Statistics(int colorCount, boolean isOpaque, double entropyBits) {
+            this.colorCount = colorCount;
+            this.isOpaque = isOpaque;
+            this.entropyBits = entropyBits;
+        }
+
+        /**
+         * Sample a regular grid of pixels.
+         *
+         * @param image image to be sampled.
+         * @return statistics of the sample.
+         */
+        static Statistics of(BufferedImage image) {
+
+            var width = image.getWidth();
+            var height = image.getHeight();
+            var step = Math.max(1, (int) Math.sqrt((double) width * height / MAX_SAMPLED_PIXELS));
+
+            var reader = new PNGEncoder.RowReader(image);
+            var row = new int[width];
+            var colors = new ColorSet(MAX_PALETTE_SIZE + 1);
+            var histogram = new int[256];
+            var isOpaque = true;
+            var count = 0;
+
+            for (var y = step / 2; y < height; y += step) {
+                var pixels = reader.read(y, row);
+                for (var x = step / 2; x < width; x += step) {
+                    var argb = pixels[x];
+                    colors.add(argb);
+                    isOpaque &= argb >>> 24 == 0xff;
+                    histogram[getLuminance(argb)]++;
+                    count++;
+                }
+            }
+
+            // Shannon entropy of the luminance in bits per pixel
+            var entropyBits = 0.0;
+            for (var frequency : histogram) {
+                if (frequency > 0) {
+                    var p = (double) frequency / count;
+                    entropyBits -= p * Math.log(p) / Math.log(2);
+                }
+            }
+
+            return new Statistics(colors.size(), isOpaque, entropyBits);
+
+        }
+
+    }
+
+    /**
+     * Set of ARGB colors that stops growing at its capacity.
+     */
+    private static final class ColorSet {
+
+        private final int[] colors;
+        private final boolean[] isUsed;
+        private final int mask;
+        private final int capacity;
+        private int size;
+        private int lastColor;
+
+        private ColorSet(int capacity) {
+            this.capacity = capacity;
+            var tableSize = Integer.highestOneBit(capacity * 4);
+            colors = new int[tableSize];
+            isUsed = new boolean[tableSize];
+            mask = tableSize - 1;
+        }
+
+        /**
+         * @return false if the set is full and does not contain the color.
+         */
+        private boolean add(int argb) {
+
+            // runs of the same color are common in screenshots
+            if (size > 0 && argb == lastColor) {
+                return true;
+            }
+
+            var slot = argb * 0x9E3779B9 >>> 16 & mask;
+            while (isUsed[slot]) {
+                if (colors[slot] == argb) {
+                    lastColor = argb;
+                    return true;
+                }
+                slot = slot + 1 & mask;
+            }
+
+            if (size == capacity) {
+                return false;
+            }
+
+            colors[slot] = argb;
+            isUsed[slot] = true;
+            size++;
+            lastColor = argb;
+
+            return true;
+
+        }
+
+        private int size() {
+            return size;
+        }
+
+        /**
+         * @return colors in the set.
+         */
+        private int[] toArray() {
+
+            var array = new int[size];
+            var index = 0;
+            for (var slot = 0; slot < colors.length; slot++) {
+                if (isUsed[slot]) {
+                    array[index++] = colors[slot];
+                }
+            }
+
+            return array;
+
+        }
+
+    }
+
+    /**
+     * Choose the codec of the image.
+     *
+     * @param image  image to be encoded.
+     * @param option one of the selection options, AUTO_OPTION to decide from the pixel statistics.
+     * @return codec of the image.
+     */
+    public static ImageCodec select(BufferedImage image, int option) {
+        return switch (option) {
+            case PNG_OPTION -> PNG;
+            case PALETTE_PNG_OPTION -> PALETTE_PNG;
+            case JPEG_OPTION -> JPEG;
+            default -> select(image);
+        };
+    }
+
+    /**
+     * @param image image to be encoded.
+     * @return codec chosen from the statistics of the sampled pixels.
+     */
+    private static ImageCodec select(BufferedImage image) {
+
+        var statistics = Statistics.of(image);
+
+        if (statistics.colorCount <= MAX_PALETTE_SIZE) {
+            return PALETTE_PNG;
+        }
+
+        if (statistics.isOpaque && (long) image.getWidth() * image.getHeight() >= JPEG_MIN_PIXELS
+                && statistics.entropyBits >= JPEG_MIN_ENTROPY_BITS) {
+            return JPEG;
+        }
+
+        return PNG;
+
+    }
+
+    /**
+     * Encode the image with the settings of the snapshot.
+     *
+     * @param image        image to be encoded.
+     * @param snapshot     snapshot of the preferences.
+     * @param outputStream output stream of the encoded image.
+     * @throws IOException if the image cannot be encoded.
+     */
+    public void encode(BufferedImage image, PreferenceSnapshot snapshot, OutputStream outputStream) throws IOException {
+
+        var filter = getFilter(snapshot.getPNGFilterOption());
+        var level = snapshot.getPNGCompressionLevel();
+
+        // the automatic selection only sampled the colors, it must stay lossless if the full image has more
+        var isQuantized = snapshot.getImageCodecOption() == PALETTE_PNG_OPTION;
+
+        switch (this) {
+            case PNG -> encodePNG(image, false, filter, level, outputStream);
+            case PALETTE_PNG -> encodePNG(image, isQuantized, filter, level, outputStream);
+            case JPEG -> encodeJPEG(image, snapshot.getJPEGQuality(), outputStream);
+        }
+
+    }
+
+    /**
+     * @param option filter option of the preferences.
+     * @return scanline filter, ADAPTIVE if the option is invalid.
+     */
+    private static PNGEncoder.Filter getFilter(int option) {
+        var filters = PNGEncoder.Filter.values();
+        return option >= 0 && option < filters.length ? filters[option] : PNGEncoder.Filter.ADAPTIVE;
+    }
+
+    /**
+     * Read all pixels once to choose the smallest lossless layout, indexed if there are few enough colors.
+     *
+     * @param isQuantized whether to quantize the colors to the fixed palette if there are too many of them,
+     *                    otherwise the image is written as RGB or RGBA.
+     */
+    private static void encodePNG(BufferedImage image, boolean isQuantized, PNGEncoder.Filter filter, int level,
+                                  OutputStream outputStream) throws IOException {
+
+        var width = image.getWidth();
+        var height = image.getHeight();
+
+        var reader = new PNGEncoder.RowReader(image);
+        var row = new int[width];
+        var colors = new ColorSet(MAX_PALETTE_SIZE);
+        var hasFewColors = true;
+        var isOpaque = true;
+        var isGray = true;
+
+        for (var y = 0; y < height; y++) {
+            var pixels = reader.read(y, row);
+            for (var x = 0; x < width; x++) {
+                var argb = pixels[x];
+                hasFewColors = hasFewColors && colors.add(argb);
+                isOpaque &= argb >>> 24 == 0xff;
+                isGray &= (argb >> 16 & 0xff) == (argb & 0xff) && (argb >> 8 & 0xff) == (argb & 0xff);
+            }
+        }
+
+        isGray &= isOpaque;
+
+        // a gray byte is as small as an index and needs no palette
+        if (hasFewColors && !isGray) {
+            var palette = colors.toArray();
+            PNGEncoder.encode(image, PNGEncoder.ColorType.INDEXED, palette, new PNGEncoder.PaletteIndexMap(palette),
+                    filter, level, outputStream);
+        } else if (isGray) {
+            PNGEncoder.encode(image, PNGEncoder.ColorType.GRAY, null, null, filter, level, outputStream);
+        } else if (isQuantized) {
+            PNGEncoder.encode(image, PNGEncoder.ColorType.INDEXED, getFixedPalette(), ImageCodec::getFixedPaletteIndex,
+                    filter, level, outputStream);
+        } else {
+            PNGEncoder.encode(image, isOpaque ? PNGEncoder.ColorType.RGB : PNGEncoder.ColorType.RGBA, null, null,
+                    filter, level, outputStream);
+        }
+
+    }
+
+    /**
+     * @return opaque colors of the 6x6x6 cube followed by the gray levels.
+     */
+    private static int[] getFixedPalette() {
+
+        var palette = new int[MAX_PALETTE_SIZE];
+        var index = 0;
+
+        for (var r = 0; r < CUBE_LEVELS; r++) {
+            for (var g = 0; g < CUBE_LEVELS; g++) {
+                for (var b = 0; b < CUBE_LEVELS; b++) {
+                    palette[index++] = 0xff000000 | r * 51 << 16 | g * 51 << 8 | b * 51;
+                }
+            }
+        }
+
+        for (var i = 0; i < GRAY_LEVELS; i++) {
+            var level = Math.round(i * 255f / (GRAY_LEVELS - 1));
+            palette[index++] = 0xff000000 | level * 0x010101;
+        }
+
+        return palette;
+
+    }
+
+    /**
+     * @param argb pixel, blended onto white if translucent.
+     * @return index of the nearest color of the fixed palette.
+     */
+    private static int getFixedPaletteIndex(int argb) {
+
+        var alpha = argb >>> 24;
+        var r = blendOntoWhite(argb >> 16 & 0xff, alpha);
+        var g = blendOntoWhite(argb >> 8 & 0xff, alpha);
+        var b = blendOntoWhite(argb & 0xff, alpha);
+
+        // near-gray pixels such as anti-aliased text keep more levels
+        if (Math.abs(r - g) <= GRAY_TOLERANCE && Math.abs(g - b) <= GRAY_TOLERANCE && Math.abs(r - b) <= GRAY_TOLERANCE) {
+            var luminance = (r * 77 + g * 150 + b * 29) >> 8;
+            return CUBE_LEVELS * CUBE_LEVELS * CUBE_LEVELS + (luminance * (GRAY_LEVELS - 1) + 127) / 255;
+        }
+
+        return ((r + 25) / 51 * CUBE_LEVELS + (g + 25) / 51) * CUBE_LEVELS + (b + 25) / 51;
+
+    }
+
+    private static int blendOntoWhite(int value, int alpha) {
+        return (value * alpha + 255 * (255 - alpha) + 127) / 255;
+    }
+
+    /**
+     * @return approximate luminance of an ARGB pixel between 0 and 255.
+     */
+    private static int getLuminance(int argb) {
+        return ((argb >> 16 & 0xff) * 77 + (argb >> 8 & 0xff) * 150 + (argb & 0xff) * 29) >> 8;
+    }
+
+    /**
+     * Write the image by the ImageIO JPEG writer, translucent pixels are blended onto white.
+     */
+    private static void encodeJPEG(BufferedImage image, int quality, OutputStream outputStream) throws IOException {
+
+        var writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG writer");
+        }
+
+        var writer = writers.next();
+        var writeParam = writer.getDefaultWriteParam();
+        writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        writeParam.setCompressionQuality(Math.max(1, Math.min(quality, 100)) / 100f);
+
+        try (var imageOutputStream = ImageIO.createImageOutputStream(outputStream)) {
+            writer.setOutput(imageOutputStream);
+            writer.write(null, new IIOImage(toRGB(image), null, null), writeParam);
+        } finally {
+            writer.dispose();
+        }
+
+    }
+
+    /**
+     * @return image without alpha, sharing the pixels of opaque packed ARGB images.
+     */
+    private static BufferedImage toRGB(BufferedImage image) {
+
+        var type = image.getType();
+        if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_BYTE_GRAY || type == BufferedImage.TYPE_3BYTE_BGR) {
+            return image;
+        }
+
+        var raster = image.getRaster();
+        if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_ARGB_PRE) && raster.getParent() == null
+                && raster.getDataBuffer() instanceof DataBufferInt && raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+                && isOpaque(image)) {
+            // the color channels of opaque pixels are the same with or without premultiplication
+            var scanline = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+            var rgbRaster = Raster.createPackedRaster(raster.getDataBuffer(), image.getWidth(), image.getHeight(), scanline,
+                    new int[]{0x00ff0000, 0x0000ff00, 0x000000ff}, null);
+            return new BufferedImage(new DirectColorModel(24, 0x00ff0000, 0x0000ff00, 0x000000ff), rgbRaster, false, null);
+        }
+
+        var rgbImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        var graphics = rgbImage.createGraphics();
+        graphics.drawImage(image, 0, 0, Color.WHITE, null);
+        graphics.dispose();
+
+        return rgbImage;
+
+    }
+
+    /**
+     * @return whether every pixel of a packed ARGB image is opaque.
+     */
+    private static boolean isOpaque(BufferedImage image) {
+
+        var reader = new PNGEncoder.RowReader(image);
+        var row = new int[image.getWidth()];
+
+        for (var y = 0; y < image.getHeight(); y++) {
+            var pixels = reader.read(y, row);
+            for (var x = 0; x < image.getWidth(); x++) {
+                if (pixels[x] >>> 24 != 0xff) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+
+    }
+
+}
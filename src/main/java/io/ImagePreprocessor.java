@@ -0,0 +1,240 @@
+package io;
+
+import java.awt.Color;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+
+/**
+ * IO.ImagePreprocessor.java
+ * Pre-processes the clipboard image before it is encoded.
+ * Trims uniform borders, caps the longest side and optionally reduces colors, as set in IO.PreferenceHelper.
+ */
+public class ImagePreprocessor {
+
+    // blank margin kept around the trimmed content
+    private static final int TRIM_PADDING = 4;
+    // maximum difference of each channel to the border color
+    private static final int TRIM_TOLERANCE = 8;
+
+    private static final int GRAY_PALETTE_SIZE = 16;
+    private static final IndexColorModel GRAY_PALETTE = createGrayPalette();
+
+    /**
+     * @return 16-level gray palette with 4 bits per pixel.
+     */
+    private static IndexColorModel createGrayPalette() {
+
+        var levels = new byte[GRAY_PALETTE_SIZE];
+        for (var i = 0; i < GRAY_PALETTE_SIZE; i++) {
+            levels[i] = (byte) (i * 255 / (GRAY_PALETTE_SIZE - 1));
+        }
+
+        return new IndexColorModel(4, GRAY_PALETTE_SIZE, levels, levels, levels);
+
+    }
+
+    /**
+     * Apply all enabled pre-processing stages.
+     *
+     * @param image        image to be processed.
+     * @param timingReport report to record the time of each stage.
+     * @return processed image, could be the original one if no stage changes it.
+     */
+    public static BufferedImage process(BufferedImage image, TimingReport timingReport) {
+
+        var preferenceSnapshot = PreferenceHelper.getSnapshot();
+
+        if (preferenceSnapshot.getImageTrimOption()) {
+            image = trim(image);
+            timingReport.mark("trim");
+        }
+
+        var maxSideLength = preferenceSnapshot.getImageMaxSideLength();
+        if (maxSideLength > 0) {
+            image = downscale(image, maxSideLength);
+            timingReport.mark("downscale");
+        }
+
+        var colorOption = preferenceSnapshot.getImageColorOption();
+        if (colorOption == 1) {
+            image = convert(image, new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY));
+            timingReport.mark("grayscale");
+        } else if (colorOption == 2) {
+            image = convert(image, new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_BINARY, GRAY_PALETTE));
+            timingReport.mark("palette");
+        }
+
+        return image;
+
+    }
+
+    /**
+     * @return whether two ARGB colors are within the trimming tolerance.
+     */
+    private static boolean isSimilar(int argb, int borderArgb) {
+
+        if (argb == borderArgb) {
+            return true;
+        }
+
+        for (var shift = 0; shift < 32; shift += 8) {
+            if (Math.abs((argb >>> shift & 0xff) - (borderArgb >>> shift & 0xff)) > TRIM_TOLERANCE) {
+                return false;
+            }
+        }
+
+        return true;
+
+    }
+
+    /**
+     * @return whether the pixels of the line only contain the border color.
+     */
+    private static boolean isUniformLine(int[] pixels, int start, int step, int count, int borderArgb) {
+
+        for (var i = 0; i < count; i++) {
+            if (!isSimilar(pixels[start + i * step], borderArgb)) {
+                return false;
+            }
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Remove the borders with the same color as the top left pixel.
+     * Integer ARGB/RGB images are scanned in place, other types are read into an ARGB array first.
+     *
+     * @param image image to be trimmed.
+     * @return trimmed image sharing the raster of the original one.
+     */
+    public static BufferedImage trim(BufferedImage image) {
+
+        var width = image.getWidth();
+        var height = image.getHeight();
+
+        int[] pixels;
+        int offset;
+        int scanline;
+
+        var type = image.getType();
+        var raster = image.getRaster();
+
+        if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_ARGB_PRE || type == BufferedImage.TYPE_INT_RGB)
+                && raster.getDataBuffer() instanceof DataBufferInt && raster.getParent() == null
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+            // no copy for the common clipboard image types
+            pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+            offset = raster.getDataBuffer().getOffset();
+            scanline = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        } else {
+            pixels = image.getRGB(0, 0, width, height, null, 0, width);
+            offset = 0;
+            scanline = width;
+        }
+
+        var borderArgb = pixels[offset];
+
+        var top = 0;
+        while (top < height && isUniformLine(pixels, offset + top * scanline, 1, width, borderArgb)) {
+            top++;
+        }
+
+        // image of a single color
+        if (top == height) {
+            return image;
+        }
+
+        var bottom = height;
+        while (bottom > top && isUniformLine(pixels, offset + (bottom - 1) * scanline, 1, width, borderArgb)) {
+            bottom--;
+        }
+
+        var left = 0;
+        while (left < width && isUniformLine(pixels, offset + top * scanline + left, scanline, bottom - top, borderArgb)) {
+            left++;
+        }
+
+        var right = width;
+        while (right > left && isUniformLine(pixels, offset + top * scanline + right - 1, scanline, bottom - top, borderArgb)) {
+            right--;
+        }
+
+        top = Math.max(top - TRIM_PADDING, 0);
+        left = Math.max(left - TRIM_PADDING, 0);
+        bottom = Math.min(bottom + TRIM_PADDING, height);
+        right = Math.min(right + TRIM_PADDING, width);
+
+        if (top == 0 && left == 0 && bottom == height && right == width) {
+            return image;
+        }
+
+        return image.getSubimage(left, top, right - left, bottom - top);
+
+    }
+
+    /**
+     * Scale the image down if its longest side exceeds the limit.
+     * The image is halved step by step first to keep thin strokes readable.
+     *
+     * @param image         image to be scaled.
+     * @param maxSideLength maximum length of the longest side.
+     * @return scaled image.
+     */
+    public static BufferedImage downscale(BufferedImage image, int maxSideLength) {
+
+        var longestSide = Math.max(image.getWidth(), image.getHeight());
+
+        if (longestSide <= maxSideLength) {
+            return image;
+        }
+
+        var scale = (double) maxSideLength / longestSide;
+        var targetWidth = Math.max((int) Math.round(image.getWidth() * scale), 1);
+        var targetHeight = Math.max((int) Math.round(image.getHeight() * scale), 1);
+
+        var width = image.getWidth();
+        var height = image.getHeight();
+
+        do {
+            width = Math.max(width / 2, targetWidth);
+            height = Math.max(height / 2, targetHeight);
+
+            var scaledImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            var graphics2D = scaledImage.createGraphics();
+            graphics2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics2D.drawImage(image, 0, 0, width, height, null);
+            graphics2D.dispose();
+
+            image = scaledImage;
+        } while (width != targetWidth || height != targetHeight);
+
+        return image;
+
+    }
+
+    /**
+     * Draw the image on a white background of the target color type.
+     *
+     * @param image  image to be converted.
+     * @param target empty image of the target color type.
+     * @return the target image.
+     */
+    private static BufferedImage convert(BufferedImage image, BufferedImage target) {
+
+        var graphics2D = target.createGraphics();
+        graphics2D.setColor(Color.WHITE);
+        graphics2D.fillRect(0, 0, target.getWidth(), target.getHeight());
+        graphics2D.drawImage(image, 0, 0, null);
+        graphics2D.dispose();
+
+        return target;
+
+    }
+
+}
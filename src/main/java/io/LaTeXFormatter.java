@@ -0,0 +1,220 @@
+package io;
+
+
+/**
+ * IO.LaTeXFormatter.java
+ * Single-pass rewriter of the LaTeX delimiters in a recognised result.
+ * Walks the result once and writes all requested formats into reused builders,
+ * with the same output as the former chain of String.replace() calls followed by replaceAll("( )+", " ").
+ */
+public final class LaTeXFormatter {
+
+    // builders larger than this are not kept for reuse
+    private static final int MAX_REUSED_CAPACITY = 1 << 20;
+
+    private static final ThreadLocal<StringBuilder[]> BUILDERS = ThreadLocal.withInitial(() -> new StringBuilder[0]);
+
+    private static final int TEXT = 0;
+    private static final int OPEN_INLINE = 1;
+    private static final int CLOSE_INLINE = 2;
+    private static final int OPEN_DISPLAY = 3;
+    private static final int CLOSE_DISPLAY = 4;
+
+    private LaTeXFormatter() {
+    }
+
+    /**
+     * Single-pass equivalent of the former indexOf() based scan.
+     * Text is all wrapped if it starts with \( and ends with \), with only whitespaces between each \) and the next \(.
+     *
+     * @param string string to be search.
+     * @return is text all wrapped.
+     */
+    public static boolean isTextAllWrapped(String string) {
+
+        if (!string.startsWith("\\(")) {
+            return false;
+        }
+
+        var length = string.length();
+        // between a \) and the next \(
+        var isInGap = false;
+
+        for (var i = 0; i < length; i++) {
+            var c = string.charAt(i);
+            var next = i + 1 < length ? string.charAt(i + 1) : 0;
+            if (isInGap) {
+                if (c == '\\' && next == '(') {
+                    isInGap = false;
+                    i++;
+                } else if (c > ' ') {
+                    return false;
+                }
+            } else if (c == '\\' && next == ')') {
+                if (i == length - 2) {
+                    return true;
+                }
+                isInGap = true;
+                i++;
+            }
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Format the string with a single pair of delimiters.
+     *
+     * @param string         string to be formatted.
+     * @param leftDelimiter  prefix.
+     * @param rightDelimiter postfix.
+     * @return formatted string with multiple spaces replaced with single spaces.
+     */
+    public static String format(String string, String leftDelimiter, String rightDelimiter) {
+        return format(string, new String[]{leftDelimiter}, new String[]{rightDelimiter})[0];
+    }
+
+    /**
+     * Format the string with several pairs of delimiters in a single pass.
+     *
+     * @param string              string to be formatted.
+     * @param leftDelimiterArray  prefix of each format.
+     * @param rightDelimiterArray postfix of each format.
+     * @return formatted strings in the order of the delimiters.
+     */
+    public static String[] format(String string, String[] leftDelimiterArray, String[] rightDelimiterArray) {
+
+        var count = leftDelimiterArray.length;
+        var isAllWrapped = isTextAllWrapped(string);
+
+        // replacement of \( and \), then \[ and \] of each format
+        var inlineLeftArray = new String[count];
+        var inlineRightArray = new String[count];
+        var displayLeftArray = new String[count];
+        var displayRightArray = new String[count];
+
+        for (var k = 0; k < count; k++) {
+            if ("$".equals(leftDelimiterArray[k])) {
+                inlineLeftArray[k] = leftDelimiterArray[k];
+                inlineRightArray[k] = rightDelimiterArray[k];
+                displayLeftArray[k] = "\\[\n";
+                displayRightArray[k] = "\n\\]";
+            } else {
+                inlineLeftArray[k] = leftDelimiterArray[k] + "\n";
+                inlineRightArray[k] = "\n" + rightDelimiterArray[k];
+                displayLeftArray[k] = inlineLeftArray[k];
+                displayRightArray[k] = inlineRightArray[k];
+            }
+            if (!isAllWrapped) {
+                // inline math is kept as $ .. $ if there is unwrapped text
+                inlineLeftArray[k] = "$";
+                inlineRightArray[k] = "$";
+            }
+        }
+
+        var builders = getBuilders(count, string.length());
+        var length = string.length();
+        var i = 0;
+
+        while (i < length) {
+
+            var c = string.charAt(i);
+            var next = i + 1 < length ? string.charAt(i + 1) : 0;
+            var token = TEXT;
+            var tokenLength = 1;
+
+            if (c == '\\') {
+                if (next == '(') {
+                    token = OPEN_INLINE;
+                    tokenLength = 2;
+                } else if (next == ')') {
+                    token = CLOSE_INLINE;
+                    tokenLength = 2;
+                } else if (!isAllWrapped && next == '[') {
+                    token = OPEN_DISPLAY;
+                    // a line break after \[ is part of the delimiter
+                    tokenLength = i + 2 < length && string.charAt(i + 2) == '\n' ? 3 : 2;
+                } else if (!isAllWrapped && next == ']') {
+                    token = CLOSE_DISPLAY;
+                    tokenLength = 2;
+                }
+            } else if (c == '\n' && !isAllWrapped && next == '\\' && i + 2 < length && string.charAt(i + 2) == ']') {
+                // a line break before \] is part of the delimiter
+                token = CLOSE_DISPLAY;
+                tokenLength = 3;
+            }
+
+            for (var k = 0; k < count; k++) {
+                var builder = builders[k];
+                switch (token) {
+                    case OPEN_INLINE -> builder.append(inlineLeftArray[k]);
+                    case CLOSE_INLINE -> builder.append(inlineRightArray[k]);
+                    case OPEN_DISPLAY -> builder.append(displayLeftArray[k]);
+                    case CLOSE_DISPLAY -> builder.append(displayRightArray[k]);
+                    default -> {
+                        // replace multiple spaces with a single space
+                        if (c != ' ' || builder.length() == 0 || builder.charAt(builder.length() - 1) != ' ') {
+                            builder.append(c);
+                        }
+                    }
+                }
+            }
+
+            i += tokenLength;
+
+        }
+
+        var results = new String[count];
+        for (var k = 0; k < count; k++) {
+            results[k] = builders[k].toString();
+        }
+
+        releaseBuilders(builders);
+
+        return results;
+
+    }
+
+    /**
+     * @param count    number of builders.
+     * @param capacity expected capacity.
+     * @return empty builders of the current thread.
+     */
+    private static StringBuilder[] getBuilders(int count, int capacity) {
+
+        var builders = BUILDERS.get();
+
+        if (builders.length < count) {
+            var newBuilders = new StringBuilder[count];
+            System.arraycopy(builders, 0, newBuilders, 0, builders.length);
+            for (var k = builders.length; k < count; k++) {
+                newBuilders[k] = new StringBuilder();
+            }
+            builders = newBuilders;
+            BUILDERS.set(builders);
+        }
+
+        for (var k = 0; k < count; k++) {
+            builders[k].setLength(0);
+            builders[k].ensureCapacity(capacity + capacity / 8);
+        }
+
+        return builders;
+
+    }
+
+    /**
+     * Drop the builders grown too large to be kept.
+     *
+     * @param builders builders of the current thread.
+     */
+    private static void releaseBuilders(StringBuilder[] builders) {
+        for (var k = 0; k < builders.length; k++) {
+            if (builders[k].capacity() > MAX_REUSED_CAPACITY) {
+                builders[k] = new StringBuilder();
+            }
+        }
+    }
+
+}
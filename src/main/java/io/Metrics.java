@@ -0,0 +1,255 @@
+package io;
+
+import com.google.gson.JsonObject;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * IO.Metrics.java
+ * Lock-free registry of latency histograms, one per stage of the OCR round trip, and the current gauges of the client.
+ * Exported as JSON or as Prometheus text by IO.MetricsServer, and displayed in UI.DiagnosticsTab.
+ */
+public final class Metrics {
+
+    // upper bounds of the histogram buckets in milliseconds, the last bucket is unbounded
+    private static final double[] BUCKET_BOUNDS_MILLIS = {
+            0.1, 0.25, 0.5, 1, 2.5, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000
+    };
+
+    private static final Map<String, Histogram> HISTOGRAM_MAP = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> COUNTER_MAP = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Fixed-bucket latency histogram.
+     */
+    public static final class Histogram {
+
+        private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void record(long nanos) {
+
+            var millis = nanos / 1e6;
+            var index = 0;
+            while (index < BUCKET_BOUNDS_MILLIS.length && millis > BUCKET_BOUNDS_MILLIS[index]) {
+                index++;
+            }
+
+            bucketCounts.incrementAndGet(index);
+            count.increment();
+            sumNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+
+        }
+
+        /**
+         * @return number of recorded values.
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * @return mean in milliseconds, 0 if empty.
+         */
+        public double getMeanMillis() {
+            var n = count.sum();
+            return n == 0 ? 0 : sumNanos.sum() / 1e6 / n;
+        }
+
+        /**
+         * @return maximum in milliseconds.
+         */
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        /**
+         * Estimate the percentile by linear interpolation inside its bucket.
+         *
+         * @param percentile percentile between 0 and 1.
+         * @return estimated value in milliseconds, 0 if empty.
+         */
+        public double getPercentileMillis(double percentile) {
+
+            var n = count.sum();
+            if (n == 0) {
+                return 0;
+            }
+
+            var rank = Math.ceil(percentile * n);
+            var cumulativeCount = 0L;
+
+            for (var i = 0; i < bucketCounts.length(); i++) {
+                var bucketCount = bucketCounts.get(i);
+                if (cumulativeCount + bucketCount >= rank && bucketCount > 0) {
+                    var lower = i == 0 ? 0 : BUCKET_BOUNDS_MILLIS[i - 1];
+                    var upper = i < BUCKET_BOUNDS_MILLIS.length ? BUCKET_BOUNDS_MILLIS[i] : getMaxMillis();
+                    var estimate = lower + (upper - lower) * (rank - cumulativeCount) / bucketCount;
+                    return Math.min(estimate, getMaxMillis());
+                }
+                cumulativeCount += bucketCount;
+            }
+
+            return getMaxMillis();
+
+        }
+
+    }
+
+    /**
+     * Record the duration of a stage.
+     *
+     * @param stage name of the stage, for example "encode" or "http_ttfb".
+     * @param nanos duration in nanoseconds.
+     */
+    public static void record(String stage, long nanos) {
+        HISTOGRAM_MAP.computeIfAbsent(stage, key -> new Histogram()).record(nanos);
+    }
+
+    /**
+     * Record the time elapsed since the start.
+     *
+     * @param stage      name of the stage.
+     * @param startNanos System.nanoTime() at the start of the stage.
+     */
+    public static void recordSince(String stage, long startNanos) {
+        record(stage, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Add to a counter, exported with the gauges.
+     *
+     * @param name  name of the counter ending with "_total", for example "encoded_bytes_png_total".
+     * @param value value to be added.
+     */
+    public static void add(String name, long value) {
+        COUNTER_MAP.computeIfAbsent(name, key -> new LongAdder()).add(value);
+    }
+
+    /**
+     * @return histograms sorted by stage name.
+     */
+    public static Map<String, Histogram> getHistogramMap() {
+        return new TreeMap<>(HISTOGRAM_MAP);
+    }
+
+    /**
+     * @return current values of the client gauges and counters sorted by name.
+     */
+    public static Map<String, Number> getGaugeMap() {
+
+        var gaugeMap = new TreeMap<String, Number>();
+
+        gaugeMap.put("executor_active_threads", OCRExecutor.getActiveCount());
+        gaugeMap.put("executor_queue_size", OCRExecutor.getQueueSize());
+        gaugeMap.put("limiter_queue_depth", RequestLimiter.getQueueDepth());
+        gaugeMap.put("limiter_in_flight", RequestLimiter.getInFlightCount());
+        gaugeMap.put("limiter_concurrency_limit", RequestLimiter.getConcurrencyLimit());
+        gaugeMap.put("retry_attempts_total", RetryPolicy.getAttemptCount());
+        gaugeMap.put("retry_retries_total", RetryPolicy.getRetryCount());
+        gaugeMap.put("retry_hedges_total", RetryPolicy.getHedgeCount());
+        gaugeMap.put("retry_exhausted_total", RetryPolicy.getExhaustedCount());
+        gaugeMap.put("http_clients_built_total", HttpClientRegistry.getBuildCount());
+        gaugeMap.put("http_client_reuses_total", HttpClientRegistry.getTotalReuseCount());
+        gaugeMap.put("recognitions_coalesced_total", Recognition.getCoalescedCount());
+        gaugeMap.put("result_cache_memory_entries", ResultCache.getMemorySize());
+        COUNTER_MAP.forEach((name, counter) -> gaugeMap.put(name, counter.sum()));
+
+        return gaugeMap;
+
+    }
+
+    /**
+     * @return all metrics as a JSON object, durations in milliseconds.
+     */
+    public static String toJson() {
+
+        var stages = new JsonObject();
+
+        for (var entry : getHistogramMap().entrySet()) {
+            var histogram = entry.getValue();
+            var stage = new JsonObject();
+            stage.addProperty("count", histogram.getCount());
+            stage.addProperty("mean", histogram.getMeanMillis());
+            stage.addProperty("p50", histogram.getPercentileMillis(0.5));
+            stage.addProperty("p95", histogram.getPercentileMillis(0.95));
+            stage.addProperty("p99", histogram.getPercentileMillis(0.99));
+            stage.addProperty("max", histogram.getMaxMillis());
+            stages.add(entry.getKey(), stage);
+        }
+
+        var gauges = new JsonObject();
+        getGaugeMap().forEach(gauges::addProperty);
+
+        var jsonObject = new JsonObject();
+        jsonObject.add("stages", stages);
+        jsonObject.add("gauges", gauges);
+
+        return jsonObject.toString();
+
+    }
+
+    /**
+     * @return all metrics in the Prometheus text exposition format, durations in seconds.
+     */
+    public static String toPrometheus() {
+
+        var builder = new StringBuilder();
+        var name = "img2latex_stage_duration_seconds";
+
+        builder.append("# HELP ").append(name).append(" Duration of each stage of the OCR round trip.\n");
+        builder.append("# TYPE ").append(name).append(" histogram\n");
+
+        for (var entry : getHistogramMap().entrySet()) {
+
+            var stage = entry.getKey();
+            var histogram = entry.getValue();
+            var cumulativeCount = 0L;
+
+            for (var i = 0; i < histogram.bucketCounts.length(); i++) {
+                cumulativeCount += histogram.bucketCounts.get(i);
+                var bound = i < BUCKET_BOUNDS_MILLIS.length ?
+                        BigDecimal.valueOf(BUCKET_BOUNDS_MILLIS[i]).movePointLeft(3).stripTrailingZeros().toPlainString() : "+Inf";
+                builder.append(name).append("_bucket{stage=\"").append(stage).append("\",le=\"").append(bound).append("\"} ").
+                        append(cumulativeCount).append('\n');
+            }
+
+            builder.append(name).append("_sum{stage=\"").append(stage).append("\"} ").
+                    append(formatDouble(histogram.sumNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1))).append('\n');
+            builder.append(name).append("_count{stage=\"").append(stage).append("\"} ").append(histogram.getCount()).append('\n');
+
+        }
+
+        for (var entry : getGaugeMap().entrySet()) {
+            var gaugeName = "img2latex_" + entry.getKey();
+            builder.append("# TYPE ").append(gaugeName).append(gaugeName.endsWith("_total") ? " counter\n" : " gauge\n");
+            builder.append(gaugeName).append(' ').append(entry.getValue()).append('\n');
+        }
+
+        return builder.toString();
+
+    }
+
+    /**
+     * @return locale independent decimal.
+     */
+    private static String formatDouble(double value) {
+        return String.format(Locale.ROOT, "%.6g", value);
+    }
+
+}
@@ -0,0 +1,86 @@
+package io;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+
+/**
+ * IO.MetricsServer.java
+ * Local HTTP endpoint exporting IO.Metrics, bound to the loopback address only.
+ * GET /metrics returns the Prometheus text format, GET /metrics.json returns JSON.
+ */
+public class MetricsServer {
+
+    private static HttpServer httpServer;
+
+    /**
+     * Start the server if the port is set.
+     *
+     * @param port local port, 0 or less to keep the server disabled.
+     * @return whether the server is running.
+     */
+    public static synchronized boolean start(int port) {
+
+        if (httpServer != null) {
+            return true;
+        }
+
+        if (port <= 0 || port > 65535) {
+            return false;
+        }
+
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            System.err.println("Metrics server not started: " + e.getMessage());
+            return false;
+        }
+
+        httpServer.createContext("/metrics", exchange ->
+                respond(exchange, "text/plain; version=0.0.4; charset=utf-8", Metrics::toPrometheus));
+        httpServer.createContext("/metrics.json", exchange ->
+                respond(exchange, "application/json; charset=utf-8", Metrics::toJson));
+
+        httpServer.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "metrics-server");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        httpServer.start();
+
+        return true;
+
+    }
+
+    /**
+     * @param exchange    HTTP exchange to be answered.
+     * @param contentType content type of the body.
+     * @param body        supplier of the body.
+     * @throws IOException if the response cannot be written.
+     */
+    private static void respond(HttpExchange exchange, String contentType, Supplier<String> body) throws IOException {
+
+        try (exchange) {
+
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            var bytes = body.get().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+
+        }
+
+    }
+
+}
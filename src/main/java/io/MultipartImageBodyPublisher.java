@@ -0,0 +1,138 @@
+package io;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * IO.MultipartImageBodyPublisher.java
+ * Request body publisher that sends the encoded image as raw bytes in a multipart/form-data body.
+ * The options JSON without "src" is the "options_json" part and the image is the "file" part, so the body is a third
+ * smaller than the Base64 JSON body of IO.Base64ImageBodyPublisher and no part of the image is copied or encoded.
+ */
+public class MultipartImageBodyPublisher implements HttpRequest.BodyPublisher {
+
+    private final String boundary;
+    private final byte[] head;
+    private final byte[] image;
+    private final int imageLength;
+    private final byte[] tail;
+
+    /**
+     * @param optionsJson options of the request serialised as JSON, without the "src" value.
+     * @param codec       codec of the encoded image, for its MIME type and file name.
+     * @param image       buffer of the encoded image bytes.
+     * @param imageLength number of valid bytes in the buffer.
+     */
+    public MultipartImageBodyPublisher(byte[] optionsJson, ImageCodec codec, byte[] image, int imageLength) {
+
+        // random so that it cannot be guessed into the image bytes
+        var random = ThreadLocalRandom.current();
+        boundary = "img2latex" + Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong());
+
+        var optionsHeader = "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"options_json\"\r\n" +
+                "Content-Type: application/json\r\n\r\n";
+        var fileHeader = "\r\n--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"file\"; filename=\"image." + codec.getFileExtension() + "\"\r\n" +
+                "Content-Type: " + codec.getMimeType() + "\r\n\r\n";
+
+        var optionsHeaderBytes = optionsHeader.getBytes(StandardCharsets.US_ASCII);
+        var fileHeaderBytes = fileHeader.getBytes(StandardCharsets.US_ASCII);
+
+        // the headers and the options are small, only the image is streamed from its own buffer
+        head = new byte[optionsHeaderBytes.length + optionsJson.length + fileHeaderBytes.length];
+        System.arraycopy(optionsHeaderBytes, 0, head, 0, optionsHeaderBytes.length);
+        System.arraycopy(optionsJson, 0, head, optionsHeaderBytes.length, optionsJson.length);
+        System.arraycopy(fileHeaderBytes, 0, head, optionsHeaderBytes.length + optionsJson.length, fileHeaderBytes.length);
+
+        tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        this.image = image;
+        this.imageLength = imageLength;
+
+    }
+
+    /**
+     * @return value of the Content-Type header with the boundary of this body.
+     */
+    public String getContentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    /**
+     * @return a new input stream of the whole request body.
+     */
+    private InputStream newInputStream() {
+        return new SequenceInputStream(new SequenceInputStream(new ByteArrayInputStream(head),
+                new ImageInputStream()), new ByteArrayInputStream(tail));
+    }
+
+    /**
+     * @return exact length of the request body.
+     */
+    @Override
+    public long contentLength() {
+        return (long) head.length + imageLength + tail.length;
+    }
+
+    /**
+     * Publish the request body, a new stream is created for every subscription (e.g. redirects).
+     *
+     * @param subscriber subscriber of the request body.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        HttpRequest.BodyPublishers.ofInputStream(this::newInputStream).subscribe(subscriber);
+    }
+
+    /**
+     * Input stream of the image buffer that records the upload time once the image is read.
+     */
+    private final class ImageInputStream extends ByteArrayInputStream {
+
+        // creation time of the stream
+        private final long startNanos = System.nanoTime();
+        private boolean isRecorded = false;
+
+        private ImageInputStream() {
+            super(image, 0, imageLength);
+        }
+
+        /**
+         * Record once at the end of the image.
+         */
+        private void recordEnd() {
+            if (!isRecorded) {
+                isRecorded = true;
+                Metrics.recordSince("http_upload", startNanos);
+            }
+        }
+
+        @Override
+        public synchronized int read() {
+            var value = super.read();
+            if (value < 0) {
+                recordEnd();
+            }
+            return value;
+        }
+
+        @Override
+        public synchronized int read(byte[] bytes, int offset, int length) {
+            var count = super.read(bytes, offset, length);
+            if (count < 0) {
+                recordEnd();
+            }
+            return count;
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+package io;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * IO.OCRExecutor.java
+ * Application-wide bounded executor for OCR requests.
+ * Replaces the per-request executors and threads, and is shut down when the app quits.
+ */
+public class OCRExecutor {
+
+    private static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final int QUEUE_CAPACITY = 64;
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 2;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(QUEUE_CAPACITY), WorkerThread::new);
+
+    static {
+        // idle workers will be released during a long session
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Daemon thread used by the executor, so that a pending request never blocks the app from quitting.
+     */
+    private static final class WorkerThread extends Thread {
+
+        private WorkerThread(Runnable runnable) {
+            super(runnable, "ocr-worker-" + THREAD_COUNT.incrementAndGet());
+            setDaemon(true);
+        }
+
+    }
+
+    /**
+     * @param runnable task to be executed.
+     */
+    public static void execute(Runnable runnable) {
+        EXECUTOR.execute(runnable);
+    }
+
+    /**
+     * @param callable task to be executed.
+     * @param <T>      result type.
+     * @return future of the task result.
+     */
+    public static <T> Future<T> submit(Callable<T> callable) {
+        return EXECUTOR.submit(callable);
+    }
+
+    /**
+     * Stop accepting new requests and wait briefly for the running ones.
+     */
+    public static void shutdown() {
+
+        EXECUTOR.shutdown();
+
+        try {
+            if (!EXECUTOR.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                EXECUTOR.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            EXECUTOR.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+    }
+
+    /**
+     * @return number of live worker threads.
+     */
+    public static int getPoolSize() {
+        return EXECUTOR.getPoolSize();
+    }
+
+    /**
+     * @return number of worker threads running a task.
+     */
+    public static int getActiveCount() {
+        return EXECUTOR.getActiveCount();
+    }
+
+    /**
+     * @return number of tasks waiting in the queue.
+     */
+    public static int getQueueSize() {
+        return EXECUTOR.getQueue().size();
+    }
+
+    /**
+     * @return number of completed tasks since the app starts.
+     */
+    public static long getCompletedTaskCount() {
+        return EXECUTOR.getCompletedTaskCount();
+    }
+
+}
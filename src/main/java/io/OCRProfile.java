@@ -0,0 +1,135 @@
+package io;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+
+/**
+ * IO.OCRProfile.java
+ * Named sets of request options, each with its own IO.RequestTemplate built once and its own cache namespace.
+ * Data the profile does not ask for is neither computed by the server nor sent back.
+ * Original parameter explanation: https://docs.mathpix.com/
+ */
+public enum OCRProfile {
+
+    TEXT_ONLY("Text Only", false, false),
+    TEXT_MATH_ML("Text + MathML", true, false),
+    FULL("Text + MathML + TSV", true, true);
+
+    private final String displayName;
+    private final boolean isMathMLIncluded;
+    private final boolean isTSVIncluded;
+    private final RequestTemplate requestTemplate;
+    private final String namespace;
+
+    OCRProfile(String displayName, boolean isMathMLIncluded, boolean isTSVIncluded) {
+
+        this.displayName = displayName;
+        this.isMathMLIncluded = isMathMLIncluded;
+        this.isTSVIncluded = isTSVIncluded;
+        namespace = name().toLowerCase(Locale.ROOT);
+
+        var parameters = new JsonObject();
+
+        // formats, "data" only if any data type is included
+        var formatsParameters = new JsonArray();
+        formatsParameters.add("text");
+
+        parameters.add("formats", formatsParameters);
+
+        if (isMathMLIncluded || isTSVIncluded) {
+
+            formatsParameters.add("data");
+
+            // data options for including mathml and tsv results
+            var dataOptions = new JsonObject();
+            dataOptions.addProperty("include_tsv", isTSVIncluded);
+            dataOptions.addProperty("include_mathml", isMathMLIncluded);
+
+            parameters.add("data_options", dataOptions);
+
+        }
+
+        // metadata option for not helping to improve
+        var metadataOption = new JsonObject();
+        metadataOption.addProperty("improve_mathpix", false);
+
+        parameters.add("metadata", metadataOption);
+
+        requestTemplate = new RequestTemplate(parameters);
+
+    }
+
+    /**
+     * @param option profile option of the preferences.
+     * @return profile of the option, FULL if the option is invalid.
+     */
+    public static OCRProfile of(int option) {
+        var profiles = values();
+        return option >= 0 && option < profiles.length ? profiles[option] : FULL;
+    }
+
+    /**
+     * @return name displayed in UI.FormattingTab.
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * @return whether the MathML result is requested.
+     */
+    public boolean isMathMLIncluded() {
+        return isMathMLIncluded;
+    }
+
+    /**
+     * @return whether the TSV result is requested.
+     */
+    public boolean isTSVIncluded() {
+        return isTSVIncluded;
+    }
+
+    /**
+     * @return pre-serialised request parameters of the profile.
+     */
+    public RequestTemplate getRequestTemplate() {
+        return requestTemplate;
+    }
+
+    /**
+     * Key of the image in the IO.ResultCache and the IO.HistoryStore for this profile.
+     * FULL keeps the plain image key, which results stored before the profiles existed were recorded with.
+     *
+     * @param imageKey hex string of the SHA-256 hash of the image.
+     * @return hex string of the SHA-256 hash of the namespace and the image key.
+     */
+    public String getCacheKey(String imageKey) {
+
+        if (this == FULL) {
+            return imageKey;
+        }
+
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        var hash = messageDigest.digest((namespace + ":" + imageKey).getBytes(StandardCharsets.US_ASCII));
+        var hexBuilder = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hexBuilder.append(Character.forDigit(b >> 4 & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return hexBuilder.toString();
+
+    }
+
+}
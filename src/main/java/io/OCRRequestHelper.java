@@ -1,79 +1,145 @@
 package io;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-
-import java.net.InetSocketAddress;
-import java.net.ProxySelector;
-import java.net.URI;
+import java.io.Closeable;
+import java.io.IOException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 
 /**
  * IO.OCRRequestHelper.java
  * handles the OCR request with HTTP post.
- * Parsing the result as a IO.Response object.
+ * Decoding the result as a IO.Response object with IO.ResponseDecoder.
  */
 public class OCRRequestHelper {
 
     /**
-     * Send the request with Json parameters to Mathpix API.
-     * Parsing the result as a IO.Response object.
+     * Send the request with Json parameters to Mathpix API, or the configured endpoint, without blocking.
+     * Parsing the result as a IO.Response object once the body is received.
      *
-     * @param parameters JsonObject to send as the request parameters.
-     * @return a IO.Response object.
+     * @param requestBody Json parameters to send as the request body.
+     * @return a future of IO.Response object, completed with an error response if the request fails.
      */
-    public static Response getResult(JsonObject parameters) {
+    public static CompletableFuture<Response> getResultAsync(HttpRequest.BodyPublisher requestBody) {
+        return getResultAsync(requestBody, "application/json");
+    }
+
+    /**
+     * Send the request body of the content type, such as a multipart upload, without blocking.
+     *
+     * @param requestBody request body to be sent.
+     * @param contentType value of the Content-Type header of the body.
+     * @return a future of IO.Response object, completed with an error response if the request fails.
+     */
+    public static CompletableFuture<Response> getResultAsync(HttpRequest.BodyPublisher requestBody, String contentType) {
+
+        var startNanos = System.nanoTime();
 
         String appId;
         String appKey;
 
-        var APICredentialConfig = PreferenceHelper.getAPICredentialConfig();
+        // read all settings of this request from a single snapshot
+        var preferenceSnapshot = PreferenceHelper.getSnapshot();
+        var APICredentialConfig = preferenceSnapshot.getAPICredentialConfig();
 
         if (APICredentialConfig.isValid()) {
             appId = APICredentialConfig.getAppId();
             appKey = APICredentialConfig.getAppKey();
         } else {
             // early return
-            return new Response(IOUtils.INVALID_CREDENTIALS_ERROR);
+            return CompletableFuture.completedFuture(new Response(IOUtils.INVALID_CREDENTIALS_ERROR));
         }
 
-        // default protocols: [TLSv1.3, TLSv1.2]
+        // default or configured endpoint, parsed once per preference change
+        var apiUri = preferenceSnapshot.getAPIUri();
+
+        if (apiUri == null) {
+            return CompletableFuture.completedFuture(new Response(IOUtils.INVALID_API_URL_ERROR));
+        }
+
+        // shared HttpClient, rebuilt only if the proxy config changes
         HttpClient httpClient;
 
-        // HTTP version 2 first, then HTTP version 1.1
-        if (PreferenceHelper.getProxyEnableOption()) {
+        if (preferenceSnapshot.getProxyEnableOption()) {
             // proxy enabled
-            var config = PreferenceHelper.getProxyConfig();
+            var config = preferenceSnapshot.getProxyConfig();
             if (config.isValid()) {
-                httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).
-                        proxy(ProxySelector.of(new InetSocketAddress(config.getHostname(), config.getPort()))).build();
+                httpClient = HttpClientRegistry.getClient(config);
             } else {
-                return new Response(IOUtils.INVALID_PROXY_CONFIG_ERROR);
+                return CompletableFuture.completedFuture(new Response(IOUtils.INVALID_PROXY_CONFIG_ERROR));
             }
         } else {
-            httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+            httpClient = HttpClientRegistry.getClient(null);
         }
 
-        // request body
-        var requestBody = HttpRequest.BodyPublishers.ofString(parameters.toString());
-        // wait up to 15 seconds
-        var httpRequest = HttpRequest.newBuilder().uri(URI.create(IOUtils.API_URL)).
-                headers("app_id", appId, "app_key", appKey, "Content-type", "application/json").
-                POST(requestBody).timeout(Duration.ofSeconds(15)).build();
+        // wait up to the attempt timeout, 15 seconds by default
+        var httpRequest = HttpRequest.newBuilder().uri(apiUri).
+                headers("app_id", appId, "app_key", appKey, "Content-type", contentType).
+                POST(requestBody).timeout(Duration.ofSeconds(RetryPolicy.getAttemptTimeoutSeconds(preferenceSnapshot))).build();
 
-        var completableFuture = httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofString()).thenApply(HttpResponse::body);
+        // every attempt is queued by the rate limiter instead of being sent directly
+        return RetryPolicy.execute(preferenceSnapshot, () -> RequestLimiter.submit(() -> {
+            // time to the response headers, including the upload
+            var sendNanos = System.nanoTime();
+            return httpClient.sendAsync(httpRequest, ResponseDecoder.bodyHandler()).
+                    whenComplete((httpResponse, throwable) -> Metrics.recordSince("http_ttfb", sendNanos));
+        })).
+                thenCompose(httpResponse -> {
+                    // only requests answered by the API are counted
+                    PreferenceHelper.updateUsageCount();
+                    return decodeAsync(httpResponse);
+                }).
+                exceptionally(OCRRequestHelper::getErrorResponse).
+                whenComplete((response, throwable) -> Metrics.recordSince("http_request", startNanos));
+
+    }
+
+    /**
+     * Decode the body while it is streamed, blocking an OCR worker instead of an HTTP client thread.
+     * The stream holds the connection until it is read or closed, so it is closed if no worker accepts the task.
+     *
+     * @param httpResponse response with the streamed body.
+     * @return a future of the decoded IO.Response object.
+     */
+    private static CompletableFuture<Response> decodeAsync(HttpResponse<Supplier<Response>> httpResponse) {
 
         try {
-            return new Gson().fromJson(completableFuture.get(), Response.class);
-        } catch (InterruptedException | ExecutionException e) {
-            return new Response(e.getMessage());
+            return CompletableFuture.supplyAsync(() -> {
+                var decodeNanos = System.nanoTime();
+                var response = httpResponse.body().get();
+                Metrics.recordSince("http_body_decode", decodeNanos);
+                return response;
+            }, OCRExecutor::execute);
+        } catch (RejectedExecutionException e) {
+            // busy or shut down
+            try {
+                ((Closeable) httpResponse.body()).close();
+            } catch (IOException ignored) {
+                // nothing more to release
+            }
+            return CompletableFuture.failedFuture(e);
+        }
+
+    }
+
+    /**
+     * @param throwable exception of the request, could be wrapped in a CompletionException.
+     * @return error response with the message like "java.net.http.HttpTimeoutException: request timed out".
+     */
+    private static Response getErrorResponse(Throwable throwable) {
+
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            throwable = throwable.getCause();
         }
 
+        return new Response(throwable.toString());
+
     }
 
 }
@@ -0,0 +1,423 @@
+package io;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.IntUnaryOperator;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+
+/**
+ * IO.PNGEncoder.java
+ * Minimal PNG encoder with a configurable scanline filter and deflate level, used by IO.ImageCodec.
+ * Writes 8-bit grayscale, RGB, RGBA or indexed images, reading the pixels row by row.
+ */
+public final class PNGEncoder {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    private PNGEncoder() {
+    }
+
+    /**
+     * Layout of the encoded pixels.
+     */
+    public enum ColorType {
+
+        GRAY(0, 1), RGB(2, 3), INDEXED(3, 1), RGBA(6, 4);
+
+        private final int code;
+        private final int bytesPerPixel;
+
+        ColorType(int code, int bytesPerPixel) {
+            this.code = code;
+            this.bytesPerPixel = bytesPerPixel;
+        }
+
+    }
+
+    /**
+     * Scanline filter, ADAPTIVE picks the filter with the smallest sum of absolute differences for each row.
+     */
+    public enum Filter {
+        ADAPTIVE, NONE, SUB, UP, PAETH
+    }
+
+    /**
+     * Reads rows of non-premultiplied ARGB pixels, from the raster array if the pixels are packed integers or gray bytes.
+     */
+    static final class RowReader {
+
+        private final BufferedImage image;
+        private final int width;
+        private final int[] pixels;
+        private final int offset;
+        private final int scanline;
+        private final int alphaMask;
+        private final boolean isPremultiplied;
+        private final boolean isGray;
+
+        /**
+         * @param image image to be read.
+         */
+        RowReader(BufferedImage image) {
+
+            this.image = image;
+            width = image.getWidth();
+
+            var type = image.getType();
+            var raster = image.getRaster();
+            var isPacked = raster.getDataBuffer() instanceof DataBufferInt
+                    && raster.getSampleModel() instanceof SinglePixelPackedSampleModel;
+
+            // TYPE_BYTE_GRAY is read as stored, not through the linear gray color space
+            isGray = type == BufferedImage.TYPE_BYTE_GRAY;
+
+            if (isPacked && (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB
+                    || type == BufferedImage.TYPE_INT_ARGB_PRE)) {
+                var sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+                pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+                // sub-images share the array of their parent
+                offset = raster.getDataBuffer().getOffset() +
+                        sampleModel.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+                scanline = sampleModel.getScanlineStride();
+                // the alpha bits of TYPE_INT_RGB are undefined
+                alphaMask = type == BufferedImage.TYPE_INT_RGB ? 0xff000000 : 0;
+                isPremultiplied = type == BufferedImage.TYPE_INT_ARGB_PRE;
+            } else {
+                pixels = null;
+                offset = 0;
+                scanline = 0;
+                alphaMask = 0;
+                isPremultiplied = false;
+            }
+
+        }
+
+        /**
+         * @param y   row index.
+         * @param row array of at least the image width, filled if the pixels cannot be read in place.
+         * @return array holding the row from index 0.
+         */
+        int[] read(int y, int[] row) {
+
+            if (isGray) {
+                var raster = image.getRaster();
+                raster.getSamples(raster.getMinX(), raster.getMinY() + y, width, 1, 0, row);
+                for (var x = 0; x < width; x++) {
+                    row[x] = 0xff000000 | row[x] * 0x010101;
+                }
+                return row;
+            }
+
+            if (pixels == null) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                return row;
+            }
+
+            var start = offset + y * scanline;
+            for (var x = 0; x < width; x++) {
+                row[x] = pixels[start + x] | alphaMask;
+            }
+
+            // only translucent pixels differ from their premultiplied values
+            if (isPremultiplied) {
+                for (var x = 0; x < width; x++) {
+                    var alpha = row[x] >>> 24;
+                    if (alpha != 0xff) {
+                        row[x] = alpha == 0 ? 0 : alpha << 24 | unpremultiply(row[x] >> 16 & 0xff, alpha) << 16
+                                | unpremultiply(row[x] >> 8 & 0xff, alpha) << 8 | unpremultiply(row[x] & 0xff, alpha);
+                    }
+                }
+            }
+
+            return row;
+
+        }
+
+    }
+
+    private static int unpremultiply(int value, int alpha) {
+        return Math.min(255, (value * 255 + alpha / 2) / alpha);
+    }
+
+    /**
+     * Encode the image.
+     *
+     * @param image      image to be encoded.
+     * @param colorType  layout of the encoded pixels, GRAY only reads the blue channel.
+     * @param palette    ARGB colors of the palette for INDEXED, null otherwise.
+     * @param indexer    palette index of each ARGB pixel for INDEXED, null otherwise.
+     * @param filter     scanline filter.
+     * @param level      deflate level from 0 to 9.
+     * @param out        output stream of the PNG file.
+     * @throws IOException if the output stream cannot be written.
+     */
+    static void encode(BufferedImage image, ColorType colorType, int[] palette, IntUnaryOperator indexer,
+                       Filter filter, int level, OutputStream out) throws IOException {
+
+        var width = image.getWidth();
+        var height = image.getHeight();
+        var bytesPerPixel = colorType.bytesPerPixel;
+        var rowLength = width * bytesPerPixel;
+
+        var dataOutputStream = new DataOutputStream(out);
+        dataOutputStream.write(SIGNATURE);
+
+        // IHDR: size, 8-bit depth, color type, deflate, adaptive filtering, no interlace
+        var header = new ByteArrayOutputStream(13);
+        var headerOutputStream = new DataOutputStream(header);
+        headerOutputStream.writeInt(width);
+        headerOutputStream.writeInt(height);
+        headerOutputStream.write(new byte[]{8, (byte) colorType.code, 0, 0, 0});
+        writeChunk(dataOutputStream, "IHDR", header.toByteArray(), header.size());
+
+        if (colorType == ColorType.INDEXED) {
+            var plte = new byte[palette.length * 3];
+            var trns = new byte[palette.length];
+            var hasTransparency = false;
+            for (var i = 0; i < palette.length; i++) {
+                plte[3 * i] = (byte) (palette[i] >> 16);
+                plte[3 * i + 1] = (byte) (palette[i] >> 8);
+                plte[3 * i + 2] = (byte) palette[i];
+                trns[i] = (byte) (palette[i] >>> 24);
+                hasTransparency |= palette[i] >>> 24 != 0xff;
+            }
+            writeChunk(dataOutputStream, "PLTE", plte, plte.length);
+            if (hasTransparency) {
+                writeChunk(dataOutputStream, "tRNS", trns, trns.length);
+            }
+        }
+
+        // filtering does not help indexed pixels
+        if (colorType == ColorType.INDEXED && filter == Filter.ADAPTIVE) {
+            filter = Filter.NONE;
+        }
+
+        var idat = new ByteArrayOutputStream(Math.max(rowLength * height / 8, 64));
+        var deflater = new Deflater(Math.max(0, Math.min(level, 9)));
+
+        try (var deflaterOutputStream = new DeflaterOutputStream(idat, deflater, 1 << 16)) {
+
+            var reader = new RowReader(image);
+            var row = new int[width];
+            var previous = new byte[rowLength];
+            var current = new byte[rowLength];
+            var filtered = new byte[rowLength + 1];
+            var candidate = new byte[rowLength + 1];
+
+            for (var y = 0; y < height; y++) {
+
+                var pixels = reader.read(y, row);
+                toBytes(pixels, width, colorType, indexer, current);
+
+                if (filter == Filter.ADAPTIVE) {
+                    var bestSum = Long.MAX_VALUE;
+                    for (var type = Filter.NONE.ordinal(); type <= Filter.PAETH.ordinal(); type++) {
+                        var sum = applyFilter(Filter.values()[type], current, previous, bytesPerPixel, candidate);
+                        if (sum < bestSum) {
+                            bestSum = sum;
+                            var swap = filtered;
+                            filtered = candidate;
+                            candidate = swap;
+                        }
+                    }
+                } else {
+                    applyFilter(filter, current, previous, bytesPerPixel, filtered);
+                }
+
+                deflaterOutputStream.write(filtered, 0, rowLength + 1);
+
+                var swap = previous;
+                previous = current;
+                current = swap;
+
+            }
+
+        } finally {
+            deflater.end();
+        }
+
+        writeChunk(dataOutputStream, "IDAT", idat.toByteArray(), idat.size());
+        writeChunk(dataOutputStream, "IEND", new byte[0], 0);
+        dataOutputStream.flush();
+
+    }
+
+    /**
+     * Open addressing map from ARGB colors to palette indices.
+     */
+    static final class PaletteIndexMap implements IntUnaryOperator {
+
+        private final int[] colors;
+        private final byte[] indices;
+        private final boolean[] isUsed;
+        private final int mask;
+
+        /**
+         * @param palette ARGB colors, at most 256.
+         */
+        PaletteIndexMap(int[] palette) {
+
+            var capacity = 1024;
+            colors = new int[capacity];
+            indices = new byte[capacity];
+            isUsed = new boolean[capacity];
+            mask = capacity - 1;
+
+            for (var i = 0; i < palette.length; i++) {
+                var slot = getSlot(palette[i]);
+                colors[slot] = palette[i];
+                indices[slot] = (byte) i;
+                isUsed[slot] = true;
+            }
+
+        }
+
+        private int getSlot(int argb) {
+            var slot = argb * 0x9E3779B9 >>> 22 & mask;
+            while (isUsed[slot] && colors[slot] != argb) {
+                slot = slot + 1 & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * @param argb color in the palette.
+         * @return palette index, 0 if the color is not in the palette.
+         */
+        @Override
+        public int applyAsInt(int argb) {
+            return indices[getSlot(argb)] & 0xff;
+        }
+
+    }
+
+    /**
+     * Convert a row of ARGB pixels to the bytes of the color type.
+     */
+    private static void toBytes(int[] pixels, int width, ColorType colorType, IntUnaryOperator indexer, byte[] bytes) {
+
+        switch (colorType) {
+            case GRAY -> {
+                for (var x = 0; x < width; x++) {
+                    bytes[x] = (byte) pixels[x];
+                }
+            }
+            case RGB -> {
+                for (int x = 0, i = 0; x < width; x++) {
+                    var argb = pixels[x];
+                    bytes[i++] = (byte) (argb >> 16);
+                    bytes[i++] = (byte) (argb >> 8);
+                    bytes[i++] = (byte) argb;
+                }
+            }
+            case RGBA -> {
+                for (int x = 0, i = 0; x < width; x++) {
+                    var argb = pixels[x];
+                    bytes[i++] = (byte) (argb >> 16);
+                    bytes[i++] = (byte) (argb >> 8);
+                    bytes[i++] = (byte) argb;
+                    bytes[i++] = (byte) (argb >>> 24);
+                }
+            }
+            case INDEXED -> {
+                for (var x = 0; x < width; x++) {
+                    bytes[x] = (byte) indexer.applyAsInt(pixels[x]);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Filter a row, the first output byte is the filter type.
+     *
+     * @return sum of the absolute values of the filtered bytes, as signed bytes.
+     */
+    private static long applyFilter(Filter filter, byte[] current, byte[] previous, int bytesPerPixel, byte[] out) {
+
+        var length = current.length;
+        var sum = 0L;
+
+        switch (filter) {
+            case SUB -> {
+                out[0] = 1;
+                for (var i = 0; i < length; i++) {
+                    var left = i >= bytesPerPixel ? current[i - bytesPerPixel] : 0;
+                    out[i + 1] = (byte) (current[i] - left);
+                }
+            }
+            case UP -> {
+                out[0] = 2;
+                for (var i = 0; i < length; i++) {
+                    out[i + 1] = (byte) (current[i] - previous[i]);
+                }
+            }
+            case PAETH -> {
+                out[0] = 4;
+                for (var i = 0; i < length; i++) {
+                    var a = i >= bytesPerPixel ? current[i - bytesPerPixel] & 0xff : 0;
+                    var b = previous[i] & 0xff;
+                    var c = i >= bytesPerPixel ? previous[i - bytesPerPixel] & 0xff : 0;
+                    out[i + 1] = (byte) (current[i] - paethPredictor(a, b, c));
+                }
+            }
+            default -> {
+                out[0] = 0;
+                System.arraycopy(current, 0, out, 1, length);
+            }
+        }
+
+        for (var i = 1; i <= length; i++) {
+            sum += Math.abs(out[i]);
+        }
+
+        return sum;
+
+    }
+
+    /**
+     * @return the neighbour closest to a + b - c, as defined by the PNG specification.
+     */
+    private static int paethPredictor(int a, int b, int c) {
+
+        var p = a + b - c;
+        var pa = Math.abs(p - a);
+        var pb = Math.abs(p - b);
+        var pc = Math.abs(p - c);
+
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+
+        return pb <= pc ? b : c;
+
+    }
+
+    /**
+     * Write the length, type, data and CRC of a chunk.
+     */
+    private static void writeChunk(DataOutputStream out, String type, byte[] data, int length) throws IOException {
+
+        var typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+
+        var crc32 = new CRC32();
+        crc32.update(typeBytes);
+        crc32.update(data, 0, length);
+
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc32.getValue());
+
+    }
+
+}
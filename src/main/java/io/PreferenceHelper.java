@@ -1,27 +1,86 @@
 package io;
 
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 
 /**
  * IO.PreferenceHelper.java
  * Contains preference-related methods.
+ * Getters read an immutable IO.PreferenceSnapshot swapped on every change, so they do not touch the Preferences API.
+ * The API usage count is kept in memory and written behind in batches.
  */
 public class PreferenceHelper {
 
-    private static final String I2L_APP_ID = "I2L_APP_ID";
-    private static final String I2L_APP_KEY = "I2L_APP_KEY";
-    private static final String I2L_PROXY_PORT = "I2L_PROXY_PORT";
-    private static final String I2L_PROXY_HOSTNAME = "I2L_PROXY_HOSTNAME";
-    private static final String I2L_PROXY_ENABLE_OPTION = "I2L_PROXY_ENABLE_OPTION";
-    private static final String I2L_SECOND_FORMATTING_OPTION = "I2L_SECOND_FORMATTING_OPTION";
-    private static final String I2L_THIRD_FORMATTING_OPTION = "I2L_THIRD_FORMATTING_OPTION";
-    private static final String I2L_SUBMIT_BUTTON_ENABLE_OPTION = "I2L_SUBMIT_BUTTON_ENABLE_OPTION";
+    static final String I2L_APP_ID = "I2L_APP_ID";
+    static final String I2L_APP_KEY = "I2L_APP_KEY";
+    static final String I2L_PROXY_PORT = "I2L_PROXY_PORT";
+    static final String I2L_PROXY_HOSTNAME = "I2L_PROXY_HOSTNAME";
+    static final String I2L_PROXY_ENABLE_OPTION = "I2L_PROXY_ENABLE_OPTION";
+    static final String I2L_SECOND_FORMATTING_OPTION = "I2L_SECOND_FORMATTING_OPTION";
+    static final String I2L_THIRD_FORMATTING_OPTION = "I2L_THIRD_FORMATTING_OPTION";
+    static final String I2L_OCR_PROFILE_OPTION = "I2L_OCR_PROFILE_OPTION";
+    static final String I2L_SUBMIT_BUTTON_ENABLE_OPTION = "I2L_SUBMIT_BUTTON_ENABLE_OPTION";
+    static final String I2L_IMAGE_TRIM_OPTION = "I2L_IMAGE_TRIM_OPTION";
+    static final String I2L_IMAGE_MAX_SIDE_LENGTH = "I2L_IMAGE_MAX_SIDE_LENGTH";
+    static final String I2L_IMAGE_COLOR_OPTION = "I2L_IMAGE_COLOR_OPTION";
+    static final String I2L_IMAGE_CODEC_OPTION = "I2L_IMAGE_CODEC_OPTION";
+    static final String I2L_PNG_COMPRESSION_LEVEL = "I2L_PNG_COMPRESSION_LEVEL";
+    static final String I2L_PNG_FILTER_OPTION = "I2L_PNG_FILTER_OPTION";
+    static final String I2L_JPEG_QUALITY = "I2L_JPEG_QUALITY";
+    static final String I2L_RETRY_MAX_ATTEMPTS = "I2L_RETRY_MAX_ATTEMPTS";
+    static final String I2L_REQUEST_TIMEOUT_SECONDS = "I2L_REQUEST_TIMEOUT_SECONDS";
+    static final String I2L_HEDGED_REQUEST_OPTION = "I2L_HEDGED_REQUEST_OPTION";
+    static final String I2L_CLIPBOARD_WATCHER_OPTION = "I2L_CLIPBOARD_WATCHER_OPTION";
+    static final String I2L_CLIPBOARD_WATCHER_CPU_BUDGET = "I2L_CLIPBOARD_WATCHER_CPU_BUDGET";
+    static final String I2L_METRICS_SERVER_PORT = "I2L_METRICS_SERVER_PORT";
+    static final String I2L_API_URL = "I2L_API_URL";
+    static final String I2L_MULTIPART_UPLOAD_OPTION = "I2L_MULTIPART_UPLOAD_OPTION";
     private static final String I2L_API_USAGE_COUNT = "I2L_API_USAGE_COUNT";
     private static final String I2L_API_USAGE_COUNT_UPDATE_DATE = "I2L_API_USAGE_COUNT_UPDATE_DATE";
 
     private static final String CONFIG_NODE_PATH = "I2L_API_CREDENTIAL_CONFIG";
     private static final Preferences PREFERENCES = Preferences.userRoot().node(CONFIG_NODE_PATH);
 
+    // delay coalescing the usage count updates into a single write
+    private static final long USAGE_COUNT_FLUSH_DELAY_SECONDS = 5;
+
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "preference-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile PreferenceSnapshot snapshot = new PreferenceSnapshot(0, PREFERENCES);
+
+    private static final AtomicLong USAGE_COUNT = new AtomicLong(PREFERENCES.getLong(I2L_API_USAGE_COUNT, 0));
+    private static final AtomicBoolean IS_FLUSH_SCHEDULED = new AtomicBoolean(false);
+    private static volatile String usageCountDate = PREFERENCES.get(I2L_API_USAGE_COUNT_UPDATE_DATE, "");
+    // the usage count date is checked again only after this time
+    private static volatile long usageCountDateExpiryMillis = 0;
+    private static volatile boolean isUsageCountDirty = false;
+
+    /**
+     * @return current snapshot of the preferences.
+     */
+    public static PreferenceSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Swap in a new snapshot after a preference has been written.
+     */
+    private static synchronized void refreshSnapshot() {
+        snapshot = new PreferenceSnapshot(snapshot.getVersion() + 1, PREFERENCES);
+    }
+
     /**
      * Set app ID.
      *
@@ -29,6 +88,7 @@ public class PreferenceHelper {
      */
     public static void setAppId(String appId) {
         PREFERENCES.put(I2L_APP_ID, appId);
+        refreshSnapshot();
     }
 
     /**
@@ -38,6 +98,7 @@ public class PreferenceHelper {
      */
     public static void setAppKey(String appKey) {
         PREFERENCES.put(I2L_APP_KEY, appKey);
+        refreshSnapshot();
     }
 
     /**
@@ -46,7 +107,45 @@ public class PreferenceHelper {
      * @return IO.APICredentialConfig object.
      */
     public static APICredentialConfig getAPICredentialConfig() {
-        return new APICredentialConfig(PREFERENCES.get(I2L_APP_ID, ""), PREFERENCES.get(I2L_APP_KEY, ""));
+        return snapshot.getAPICredentialConfig();
+    }
+
+    /**
+     * Set API endpoint.
+     *
+     * @param apiUrl URL to be written, empty for the default endpoint.
+     */
+    public static void setAPIUrl(String apiUrl) {
+        PREFERENCES.put(I2L_API_URL, apiUrl);
+        refreshSnapshot();
+    }
+
+    /**
+     * Get API endpoint from Java Preferences API.
+     *
+     * @return URL in the preferences, empty for the default endpoint.
+     */
+    public static String getAPIUrl() {
+        return snapshot.getAPIUrl();
+    }
+
+    /**
+     * Set multipart upload option.
+     *
+     * @param option true to upload the raw image bytes as multipart/form-data, false to embed them in the JSON body.
+     */
+    public static void setMultipartUploadOption(boolean option) {
+        PREFERENCES.putBoolean(I2L_MULTIPART_UPLOAD_OPTION, option);
+        refreshSnapshot();
+    }
+
+    /**
+     * Get multipart upload option.
+     *
+     * @return true to upload the raw image bytes as multipart/form-data, false to embed them in the JSON body.
+     */
+    public static boolean getMultipartUploadOption() {
+        return snapshot.getMultipartUploadOption();
     }
 
     /**
@@ -56,6 +155,7 @@ public class PreferenceHelper {
      */
     public static void setSecondResultFormattingOption(int option) {
         PREFERENCES.putInt(I2L_SECOND_FORMATTING_OPTION, option);
+        refreshSnapshot();
     }
 
     /**
@@ -64,7 +164,7 @@ public class PreferenceHelper {
      * @return second formatting option.
      */
     public static int getSecondResultFormattingOption() {
-        return PREFERENCES.getInt(I2L_SECOND_FORMATTING_OPTION, 2);
+        return snapshot.getSecondResultFormattingOption();
     }
 
     /**
@@ -74,6 +174,7 @@ public class PreferenceHelper {
      */
     public static void setThirdFormattingOption(int option) {
         PREFERENCES.putInt(I2L_THIRD_FORMATTING_OPTION, option);
+        refreshSnapshot();
     }
 
     /**
@@ -82,7 +183,26 @@ public class PreferenceHelper {
      * @return third formatting option.
      */
     public static int getThirdResultFormattingOption() {
-        return PREFERENCES.getInt(I2L_THIRD_FORMATTING_OPTION, 0);
+        return snapshot.getThirdResultFormattingOption();
+    }
+
+    /**
+     * Set OCR option profile.
+     *
+     * @param profile profile of the requests to be written.
+     */
+    public static void setOCRProfile(OCRProfile profile) {
+        PREFERENCES.putInt(I2L_OCR_PROFILE_OPTION, profile.ordinal());
+        refreshSnapshot();
+    }
+
+    /**
+     * Get OCR option profile.
+     *
+     * @return profile of the requests.
+     */
+    public static OCRProfile getOCRProfile() {
+        return snapshot.getOCRProfile();
     }
 
 
@@ -93,6 +213,7 @@ public class PreferenceHelper {
      */
     public static void setProxyEnableOption(boolean option) {
         PREFERENCES.putBoolean(I2L_PROXY_ENABLE_OPTION, option);
+        refreshSnapshot();
     }
 
     /**
@@ -101,7 +222,7 @@ public class PreferenceHelper {
      * @return proxy enable option.
      */
     public static boolean getProxyEnableOption() {
-        return PREFERENCES.getBoolean(I2L_PROXY_ENABLE_OPTION, false);
+        return snapshot.getProxyEnableOption();
     }
 
     /**
@@ -111,6 +232,7 @@ public class PreferenceHelper {
      */
     public static void setProxyHostname(String host) {
         PREFERENCES.put(I2L_PROXY_HOSTNAME, host);
+        refreshSnapshot();
     }
 
     /**
@@ -120,6 +242,7 @@ public class PreferenceHelper {
      */
     public static void setProxyPort(String port) {
         PREFERENCES.put(I2L_PROXY_PORT, port);
+        refreshSnapshot();
     }
 
     /**
@@ -128,16 +251,7 @@ public class PreferenceHelper {
      * @return proxy config.
      */
     public static ProxyConfig getProxyConfig() {
-
-        int port;
-        try {
-            port = Integer.parseInt(PREFERENCES.get(I2L_PROXY_PORT, ""));
-        } catch (NumberFormatException e) {
-            port = -1;
-        }
-
-        return new ProxyConfig(PREFERENCES.get(I2L_PROXY_HOSTNAME, ""), port);
-
+        return snapshot.getProxyConfig();
     }
 
     /**
@@ -147,6 +261,7 @@ public class PreferenceHelper {
      */
     public static void setSubmitButtonEnableOption(boolean option) {
         PREFERENCES.putBoolean(I2L_SUBMIT_BUTTON_ENABLE_OPTION, option);
+        refreshSnapshot();
     }
 
     /**
@@ -155,27 +270,305 @@ public class PreferenceHelper {
      * @return submit button enable option.
      */
     public static boolean getSubmitButtonEnableOption() {
-        return PREFERENCES.getBoolean(I2L_SUBMIT_BUTTON_ENABLE_OPTION, false);
+        return snapshot.getSubmitButtonEnableOption();
+    }
+
+    /**
+     * Set image border trimming option.
+     *
+     * @param option option to be written.
+     */
+    public static void setImageTrimOption(boolean option) {
+        PREFERENCES.putBoolean(I2L_IMAGE_TRIM_OPTION, option);
+        refreshSnapshot();
+    }
+
+    /**
+     * Get image border trimming option enabled or not.
+     *
+     * @return image border trimming option.
+     */
+    public static boolean getImageTrimOption() {
+        return snapshot.getImageTrimOption();
+    }
+
+    /**
+     * Set maximum length of the longest image side.
+     *
+     * @param length length in pixels to be written, 0 for unlimited.
+     */
+    public static void setImageMaxSideLength(int length) {
+        PREFERENCES.putInt(I2L_IMAGE_MAX_SIDE_LENGTH, length);
+        refreshSnapshot();
+    }
+
+    /**
+     * Get maximum length of the longest image side.
+     *
+     * @return length in pixels, 0 for unlimited.
+     */
+    public static int getImageMaxSideLength() {
+        return snapshot.getImageMaxSideLength();
+    }
+
+    /**
+     * Set image color option.
+     *
+     * @param option 0 for original colors, 1 for grayscale, 2 for 16-level gray palette.
+     */
+    public static void setImageColorOption(int option) {
+        PREFERENCES.putInt(I2L_IMAGE_COLOR_OPTION, option);
+        refreshSnapshot();
+    }
+
+    /**
+     * Get image color option.
+     *
+     * @return 0 for original colors, 1 for grayscale, 2 for 16-level gray palette.
+     */
+    public static int getImageColorOption() {
+        return snapshot.getImageColorOption();
+    }
+
+    /**
+     * Set image codec option.
+     *
+     * @param option 0 for automatic selection, 1 for PNG, 2 for palette PNG, 3 for JPEG.
+     */
+    public static void setImageCodecOption(int option) {
+        PREFERENCES.putInt(I2L_IMAGE_CODEC_OPTION, option);
+        refreshSnapshot();
+    }
+
+    /**
+     * Get image codec option.
+     *
+     * @return 0 for automatic selection, 1 for PNG, 2 for palette PNG, 3 for JPEG.
+     */
+    public static int getImageCodecOption() {
+        return snapshot.getImageCodecOption();
+    }
+
+    /**
+     * Set deflate level of PNG images.
+     *
+     * @param level level from 0 for no compression to 9 for the smallest size.
+     */
+    public static void setPNGCompressionLevel(int level) {
+        PREFERENCES.putInt(I2L_PNG_COMPRESSION_LEVEL, level);
+        refreshSnapshot();
+    }
+
+    /**
+     * Get deflate level of PNG images.
+     *
+     * @return level from 0 for no compression to 9 for the smallest size.
+     */
+    public static int getPNGCompressionLevel() {
+        return snapshot.getPNGCompressionLevel();
+    }
+
+    /**
+     * Set scanline filter option of PNG images.
+     *
+     * @param option 0 for adaptive, 1 for none, 2 for sub, 3 for up, 4 for Paeth.
+     */
+    public static void setPNGFilterOption(int option) {
+        PREFERENCES.putInt(I2L_PNG_FILTER_OPTION, option);
+        refreshSnapshot();
+    }
+
+    /**
+     * Get scanline filter option of PNG images.
+     *
+     * @return 0 for adaptive, 1 for none, 2 for sub, 3 for up, 4 for Paeth.
+     */
+    public static int getPNGFilterOption() {
+        return snapshot.getPNGFilterOption();
+    }
+
+    /**
+     * Set quality of JPEG images.
+     *
+     * @param quality quality from 1 to 100.
+     */
+    public static void setJPEGQuality(int quality) {
+        PREFERENCES.putInt(I2L_JPEG_QUALITY, quality);
+        refreshSnapshot();
+    }
+
+    /**
+     * Get quality of JPEG images.
+     *
+     * @return quality from 1 to 100.
+     */
+    public static int getJPEGQuality() {
+        return snapshot.getJPEGQuality();
+    }
+
+    /**
+     * Set maximum number of attempts of a request, including the first one.
+     *
+     * @param attempts number of attempts to be written.
+     */
+    public static void setRetryMaxAttempts(int attempts) {
+        PREFERENCES.putInt(I2L_RETRY_MAX_ATTEMPTS, attempts);
+        refreshSnapshot();
+    }
+
+    /**
+     * Get maximum number of attempts of a request, including the first one.
+     *
+     * @return maximum number of attempts.
+     */
+    public static int getRetryMaxAttempts() {
+        return snapshot.getRetryMaxAttempts();
+    }
+
+    /**
+     * Set timeout of each request attempt.
+     *
+     * @param seconds timeout in seconds to be written.
+     */
+    public static void setRequestTimeoutSeconds(int seconds) {
+        PREFERENCES.putInt(I2L_REQUEST_TIMEOUT_SECONDS, seconds);
+        refreshSnapshot();
+    }
+
+    /**
+     * Get timeout of each request attempt.
+     *
+     * @return timeout in seconds.
+     */
+    public static int getRequestTimeoutSeconds() {
+        return snapshot.getRequestTimeoutSeconds();
+    }
+
+    /**
+     * Set hedged request option.
+     *
+     * @param option option to be written.
+     */
+    public static void setHedgedRequestOption(boolean option) {
+        PREFERENCES.putBoolean(I2L_HEDGED_REQUEST_OPTION, option);
+        refreshSnapshot();
+    }
+
+    /**
+     * Get hedged request option enabled or not.
+     *
+     * @return hedged request option.
+     */
+    public static boolean getHedgedRequestOption() {
+        return snapshot.getHedgedRequestOption();
+    }
+
+    /**
+     * Set clipboard watcher option.
+     *
+     * @param option option to be written.
+     */
+    public static void setClipboardWatcherOption(boolean option) {
+        PREFERENCES.putBoolean(I2L_CLIPBOARD_WATCHER_OPTION, option);
+        refreshSnapshot();
+    }
+
+    /**
+     * Get clipboard watcher option enabled or not.
+     *
+     * @return clipboard watcher option.
+     */
+    public static boolean getClipboardWatcherOption() {
+        return snapshot.getClipboardWatcherOption();
+    }
+
+    /**
+     * Set CPU budget of the clipboard watcher.
+     *
+     * @param percent percentage of a CPU core to be written.
+     */
+    public static void setClipboardWatcherCPUBudget(int percent) {
+        PREFERENCES.putInt(I2L_CLIPBOARD_WATCHER_CPU_BUDGET, percent);
+        refreshSnapshot();
+    }
+
+    /**
+     * Get CPU budget of the clipboard watcher.
+     *
+     * @return percentage of a CPU core.
+     */
+    public static int getClipboardWatcherCPUBudget() {
+        return snapshot.getClipboardWatcherCPUBudget();
+    }
+
+    /**
+     * Set local port of the metrics server.
+     *
+     * @param port port to be written, 0 to disable the server.
+     */
+    public static void setMetricsServerPort(int port) {
+        PREFERENCES.putInt(I2L_METRICS_SERVER_PORT, port);
+        refreshSnapshot();
+    }
+
+    /**
+     * Get local port of the metrics server.
+     *
+     * @return port, 0 if the server is disabled.
+     */
+    public static int getMetricsServerPort() {
+        return snapshot.getMetricsServerPort();
     }
 
     /**
      * Date check and zero usage.
+     * The date is only computed again once the current month is over.
      */
     private static void checkDateZeroUsage() {
-        // update date if current date is different from the record
-        var currentDate = IOUtils.getCurrentDate();
-        if (!PREFERENCES.get(I2L_API_USAGE_COUNT_UPDATE_DATE, "").equals(currentDate)) {
-            System.out.println(currentDate);
-            PREFERENCES.put(I2L_API_USAGE_COUNT_UPDATE_DATE, currentDate);
-            PREFERENCES.putLong(I2L_API_USAGE_COUNT, 0);
+
+        if (System.currentTimeMillis() < usageCountDateExpiryMillis) {
+            return;
         }
+
+        synchronized (USAGE_COUNT) {
+            // update date if current date is different from the record
+            var currentDate = IOUtils.getCurrentDate();
+            if (!usageCountDate.equals(currentDate)) {
+                System.out.println(currentDate);
+                usageCountDate = currentDate;
+                USAGE_COUNT.set(0);
+                isUsageCountDirty = true;
+            }
+            usageCountDateExpiryMillis = LocalDate.now().withDayOfMonth(1).plusMonths(1).
+                    atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+
     }
 
     /**
      * Update usage count method.
+     * The new count is written to the preferences by the flusher thread.
      */
     public static void updateUsageCount() {
-        PREFERENCES.putLong(I2L_API_USAGE_COUNT, getUsageCount() + 1);
+
+        checkDateZeroUsage();
+        USAGE_COUNT.incrementAndGet();
+        isUsageCountDirty = true;
+
+        // coalesce the updates until the scheduled flush runs
+        if (IS_FLUSH_SCHEDULED.compareAndSet(false, true)) {
+            try {
+                FLUSHER.schedule(() -> {
+                    IS_FLUSH_SCHEDULED.set(false);
+                    flushUsageCount();
+                }, USAGE_COUNT_FLUSH_DELAY_SECONDS, TimeUnit.SECONDS);
+            } catch (RejectedExecutionException e) {
+                // response received after shutdown
+                IS_FLUSH_SCHEDULED.set(false);
+                flushUsageCount();
+            }
+        }
+
     }
 
     /**
@@ -185,7 +578,36 @@ public class PreferenceHelper {
      */
     public static long getUsageCount() {
         checkDateZeroUsage();
-        return PREFERENCES.getLong(I2L_API_USAGE_COUNT, 0);
+        return USAGE_COUNT.get();
+    }
+
+    /**
+     * Write the usage count and its date if changed since the last write.
+     */
+    private static void flushUsageCount() {
+        synchronized (USAGE_COUNT) {
+            if (isUsageCountDirty) {
+                isUsageCountDirty = false;
+                PREFERENCES.put(I2L_API_USAGE_COUNT_UPDATE_DATE, usageCountDate);
+                PREFERENCES.putLong(I2L_API_USAGE_COUNT, USAGE_COUNT.get());
+            }
+        }
+    }
+
+    /**
+     * Write the pending usage count and sync the preferences to the backing store, called before exit.
+     */
+    public static void shutdown() {
+
+        FLUSHER.shutdownNow();
+        flushUsageCount();
+
+        try {
+            PREFERENCES.flush();
+        } catch (BackingStoreException e) {
+            System.err.println(e.getMessage());
+        }
+
     }
 
 }
@@ -0,0 +1,278 @@
+package io;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.prefs.Preferences;
+
+
+/**
+ * IO.PreferenceSnapshot.java
+ * Immutable in-memory copy of the preferences, replaced as a whole by IO.PreferenceHelper on every change.
+ * A request reads a single snapshot so that its settings stay consistent while the user edits them.
+ */
+public final class PreferenceSnapshot {
+
+    private final long version;
+
+    private final APICredentialConfig apiCredentialConfig;
+    private final String apiUrl;
+    private final URI apiUri;
+    private final boolean multipartUploadOption;
+    private final boolean proxyEnableOption;
+    private final ProxyConfig proxyConfig;
+    private final int secondResultFormattingOption;
+    private final int thirdResultFormattingOption;
+    private final OCRProfile ocrProfile;
+    private final boolean submitButtonEnableOption;
+    private final boolean imageTrimOption;
+    private final int imageMaxSideLength;
+    private final int imageColorOption;
+    private final int imageCodecOption;
+    private final int pngCompressionLevel;
+    private final int pngFilterOption;
+    private final int jpegQuality;
+    private final int retryMaxAttempts;
+    private final int requestTimeoutSeconds;
+    private final boolean hedgedRequestOption;
+    private final boolean clipboardWatcherOption;
+    private final int clipboardWatcherCPUBudget;
+    private final int metricsServerPort;
+
+    /**
+     * Read all settings from the preferences node.
+     *
+     * @param version     version of the snapshot, increased on every change.
+     * @param preferences preferences node to be read.
+     */
+    PreferenceSnapshot(long version, Preferences preferences) {
+
+        this.version = version;
+
+        apiCredentialConfig = new APICredentialConfig(preferences.get(PreferenceHelper.I2L_APP_ID, ""),
+                preferences.get(PreferenceHelper.I2L_APP_KEY, ""));
+
+        // the system property is used to point the client at a local mock server without changing the preferences
+        apiUrl = preferences.get(PreferenceHelper.I2L_API_URL, "");
+        var effectiveAPIUrl = System.getProperty(IOUtils.API_URL_PROPERTY, apiUrl);
+        apiUri = parseAPIUrl(effectiveAPIUrl.isBlank() ? IOUtils.DEFAULT_API_URL : effectiveAPIUrl.strip());
+
+        multipartUploadOption = preferences.getBoolean(PreferenceHelper.I2L_MULTIPART_UPLOAD_OPTION, true);
+
+        proxyEnableOption = preferences.getBoolean(PreferenceHelper.I2L_PROXY_ENABLE_OPTION, false);
+
+        int port;
+        try {
+            port = Integer.parseInt(preferences.get(PreferenceHelper.I2L_PROXY_PORT, ""));
+        } catch (NumberFormatException e) {
+            port = -1;
+        }
+        proxyConfig = new ProxyConfig(preferences.get(PreferenceHelper.I2L_PROXY_HOSTNAME, ""), port);
+
+        secondResultFormattingOption = preferences.getInt(PreferenceHelper.I2L_SECOND_FORMATTING_OPTION, 2);
+        thirdResultFormattingOption = preferences.getInt(PreferenceHelper.I2L_THIRD_FORMATTING_OPTION, 0);
+        ocrProfile = OCRProfile.of(preferences.getInt(PreferenceHelper.I2L_OCR_PROFILE_OPTION, OCRProfile.FULL.ordinal()));
+        submitButtonEnableOption = preferences.getBoolean(PreferenceHelper.I2L_SUBMIT_BUTTON_ENABLE_OPTION, false);
+        imageTrimOption = preferences.getBoolean(PreferenceHelper.I2L_IMAGE_TRIM_OPTION, true);
+        imageMaxSideLength = preferences.getInt(PreferenceHelper.I2L_IMAGE_MAX_SIDE_LENGTH, 1600);
+        imageColorOption = preferences.getInt(PreferenceHelper.I2L_IMAGE_COLOR_OPTION, 0);
+        imageCodecOption = preferences.getInt(PreferenceHelper.I2L_IMAGE_CODEC_OPTION, 0);
+        pngCompressionLevel = preferences.getInt(PreferenceHelper.I2L_PNG_COMPRESSION_LEVEL, 6);
+        pngFilterOption = preferences.getInt(PreferenceHelper.I2L_PNG_FILTER_OPTION, 0);
+        jpegQuality = preferences.getInt(PreferenceHelper.I2L_JPEG_QUALITY, 90);
+        retryMaxAttempts = preferences.getInt(PreferenceHelper.I2L_RETRY_MAX_ATTEMPTS, 3);
+        requestTimeoutSeconds = preferences.getInt(PreferenceHelper.I2L_REQUEST_TIMEOUT_SECONDS, 15);
+        hedgedRequestOption = preferences.getBoolean(PreferenceHelper.I2L_HEDGED_REQUEST_OPTION, false);
+        clipboardWatcherOption = preferences.getBoolean(PreferenceHelper.I2L_CLIPBOARD_WATCHER_OPTION, false);
+        clipboardWatcherCPUBudget = preferences.getInt(PreferenceHelper.I2L_CLIPBOARD_WATCHER_CPU_BUDGET, 1);
+        metricsServerPort = preferences.getInt(PreferenceHelper.I2L_METRICS_SERVER_PORT, 0);
+
+    }
+
+    /**
+     * @param apiUrl URL of the API endpoint.
+     * @return parsed absolute HTTP or HTTPS URI, null if invalid.
+     */
+    private static URI parseAPIUrl(String apiUrl) {
+
+        try {
+            var uri = new URI(apiUrl);
+            var scheme = uri.getScheme();
+            if (uri.getHost() != null && ("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme))) {
+                return uri;
+            }
+        } catch (URISyntaxException ignored) {
+        }
+
+        return null;
+
+    }
+
+    /**
+     * @return version of the snapshot.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return IO.APICredentialConfig object.
+     */
+    public APICredentialConfig getAPICredentialConfig() {
+        return apiCredentialConfig;
+    }
+
+    /**
+     * @return API endpoint in the preferences, empty for the default endpoint.
+     */
+    public String getAPIUrl() {
+        return apiUrl;
+    }
+
+    /**
+     * @return URI of the API endpoint, null if the configured URL is invalid.
+     */
+    public URI getAPIUri() {
+        return apiUri;
+    }
+
+    /**
+     * @return multipart upload option, false for the Base64 JSON body.
+     */
+    public boolean getMultipartUploadOption() {
+        return multipartUploadOption;
+    }
+
+    /**
+     * @return proxy enable option.
+     */
+    public boolean getProxyEnableOption() {
+        return proxyEnableOption;
+    }
+
+    /**
+     * @return proxy config.
+     */
+    public ProxyConfig getProxyConfig() {
+        return proxyConfig;
+    }
+
+    /**
+     * @return second formatting option.
+     */
+    public int getSecondResultFormattingOption() {
+        return secondResultFormattingOption;
+    }
+
+    /**
+     * @return third formatting option.
+     */
+    public int getThirdResultFormattingOption() {
+        return thirdResultFormattingOption;
+    }
+
+    /**
+     * @return OCR option profile of the requests.
+     */
+    public OCRProfile getOCRProfile() {
+        return ocrProfile;
+    }
+
+    /**
+     * @return submit button enable option.
+     */
+    public boolean getSubmitButtonEnableOption() {
+        return submitButtonEnableOption;
+    }
+
+    /**
+     * @return image border trimming option.
+     */
+    public boolean getImageTrimOption() {
+        return imageTrimOption;
+    }
+
+    /**
+     * @return maximum length of the longest image side in pixels, 0 for unlimited.
+     */
+    public int getImageMaxSideLength() {
+        return imageMaxSideLength;
+    }
+
+    /**
+     * @return 0 for original colors, 1 for grayscale, 2 for 16-level gray palette.
+     */
+    public int getImageColorOption() {
+        return imageColorOption;
+    }
+
+    /**
+     * @return 0 for automatic selection, 1 for PNG, 2 for palette PNG, 3 for JPEG.
+     */
+    public int getImageCodecOption() {
+        return imageCodecOption;
+    }
+
+    /**
+     * @return deflate level of PNG images from 0 to 9.
+     */
+    public int getPNGCompressionLevel() {
+        return pngCompressionLevel;
+    }
+
+    /**
+     * @return 0 for adaptive, 1 for none, 2 for sub, 3 for up, 4 for Paeth.
+     */
+    public int getPNGFilterOption() {
+        return pngFilterOption;
+    }
+
+    /**
+     * @return quality of JPEG images from 1 to 100.
+     */
+    public int getJPEGQuality() {
+        return jpegQuality;
+    }
+
+    /**
+     * @return maximum number of attempts of a request.
+     */
+    public int getRetryMaxAttempts() {
+        return retryMaxAttempts;
+    }
+
+    /**
+     * @return timeout of each request attempt in seconds.
+     */
+    public int getRequestTimeoutSeconds() {
+        return requestTimeoutSeconds;
+    }
+
+    /**
+     * @return hedged request option.
+     */
+    public boolean getHedgedRequestOption() {
+        return hedgedRequestOption;
+    }
+
+    /**
+     * @return clipboard watcher option.
+     */
+    public boolean getClipboardWatcherOption() {
+        return clipboardWatcherOption;
+    }
+
+    /**
+     * @return CPU budget of the clipboard watcher in percentage of a CPU core.
+     */
+    public int getClipboardWatcherCPUBudget() {
+        return clipboardWatcherCPUBudget;
+    }
+
+    /**
+     * @return local port of the metrics server, 0 if disabled.
+     */
+    public int getMetricsServerPort() {
+        return metricsServerPort;
+    }
+
+}
@@ -1,96 +1,254 @@
 package io;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
 
-import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Base64;
-import java.util.concurrent.Callable;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 
 /**
  * IO.Recognition.java
- * implements Callable for concurrent call.
- * Set the "src" value with base64 encoded clipboard image before each request.
+ * Recognises images asynchronously, from the IO.ResultCache and the IO.HistoryStore if possible.
+ * The request parameters are the immutable IO.RequestTemplate of the IO.OCRProfile in the preferences, so that one
+ * instance serves concurrent requests.
+ * The image is uploaded as raw bytes in a multipart body, or Base64 encoded while the JSON request body is being sent.
  */
-public class Recognition implements Callable<Response> {
+public class Recognition {
 
-    private final JsonObject parameters = new JsonObject();
+    // requests in flight by the key of the image, shared by all instances
+    private static final Map<String, CompletableFuture<Response>> IN_FLIGHT_MAP = new ConcurrentHashMap<>();
+    private static final AtomicLong COALESCED_COUNT = new AtomicLong();
 
     /**
-     * Original parameter explanation: https://docs.mathpix.com/
-     * Initialisation of the IO.TextRecognition class and a JsonObject with unchanged parameters.
+     * Byte array output stream that exposes its buffer to avoid copying the encoded image out.
      */
-    public Recognition() {
+    private static final class ImageByteArrayOutputStream extends ByteArrayOutputStream {
 
-        // "src" initialises with empty string
-        parameters.addProperty("src", "");
+        private final ImageCodec codec;
 
-        // formats
-        var formatsParameters = new JsonArray();
-        formatsParameters.add("text");
-        formatsParameters.add("data");
+        private ImageByteArrayOutputStream(ImageCodec codec) {
+            this.codec = codec;
+        }
 
-        parameters.add("formats", formatsParameters);
+        /**
+         * @return internal buffer, only the first size() bytes are valid.
+         */
+        private byte[] getBuffer() {
+            return buf;
+        }
 
-        // data options for including mathml result
-        var dataOptions = new JsonObject();
-        dataOptions.addProperty("include_tsv", true);
-        dataOptions.addProperty("include_mathml", true);
+    }
 
-        parameters.add("data_options", dataOptions);
+    /**
+     * Pre-process the image by IO.ImagePreprocessor and encode it by the IO.ImageCodec chosen for it.
+     * The encoding time and the encoded size are recorded per codec so that the codec options can be tuned.
+     *
+     * @param bufferedImage image to be encoded.
+     * @param timingReport  report to record the time of each stage.
+     * @return output stream of the encoded image, null if the encoding fails.
+     */
+    private ImageByteArrayOutputStream encode(BufferedImage bufferedImage, TimingReport timingReport) {
+
+        // trim, downscale and reduce colors
+        bufferedImage = ImagePreprocessor.process(bufferedImage, timingReport);
 
-        // metadata option for not helping to improve
-        var metadataOption = new JsonObject();
-        metadataOption.addProperty("improve_mathpix", false);
+        var snapshot = PreferenceHelper.getSnapshot();
+        var codec = ImageCodec.select(bufferedImage, snapshot.getImageCodecOption());
 
-        parameters.add("metadata", metadataOption);
+        // output stream in byte array
+        var byteArrayOutputStream = new ImageByteArrayOutputStream(codec);
+
+        try {
+            // BufferedImage to byte array output stream
+            codec.encode(bufferedImage, snapshot, byteArrayOutputStream);
+        } catch (IOException e) {
+            return null;
+        }
+
+        timingReport.mark("encode");
+
+        var metricName = codec.getMetricName();
+        Metrics.record("encode_" + metricName, timingReport.getStageNanosMap().get("encode"));
+        Metrics.add("encoded_images_" + metricName + "_total", 1);
+        Metrics.add("encoded_bytes_" + metricName + "_total", byteArrayOutputStream.size());
+
+        return byteArrayOutputStream;
 
     }
 
     /**
-     * Convert the image to byte[] and encode the image with base64.
-     * Replace the "src" value in the pre-initialised parameters JsonObject.
+     * Send the encoded image as a multipart upload of its raw bytes, or in the Base64 JSON body if the option is off.
+     *
+     * @param outputStream output stream of the encoded image.
+     * @param snapshot     snapshot of the preferences for the upload option and the IO.OCRProfile.
+     * @return a future of the OCR request result.
+     */
+    private CompletableFuture<Response> sendAsync(ImageByteArrayOutputStream outputStream, PreferenceSnapshot snapshot) {
+
+        var requestTemplate = snapshot.getOCRProfile().getRequestTemplate();
+
+        if (snapshot.getMultipartUploadOption()) {
+            var requestBody = requestTemplate.newMultipartBody(outputStream.codec, outputStream.getBuffer(), outputStream.size());
+            return OCRRequestHelper.getResultAsync(requestBody, requestBody.getContentType());
+        }
+
+        var requestBody = requestTemplate.newJsonBody(outputStream.codec, outputStream.getBuffer(), outputStream.size());
+        return OCRRequestHelper.getResultAsync(requestBody);
+
+    }
+
+    /**
+     * Encode the image on the IO.OCRExecutor and send the request without blocking any thread.
+     * Results of identical images are returned from the IO.ResultCache or the IO.HistoryStore without sending any
+     * request, and identical images submitted while a request is in flight share its result.
      *
      * @param image Image to be recognised.
-     * @return whether the parameter setting is successful.
+     * @return a future of the OCR request result, completed with null if the image cannot be encoded.
      */
-    public Boolean setSrcParameters(Image image) {
+    public CompletableFuture<Response> recogniseAsync(Image image) {
+        return recogniseAsync(() -> FXImageBridge.fromFXImage(image));
+    }
 
-        // output stream in byte array
-        var byteArrayOutputStream = new ByteArrayOutputStream();
+    /**
+     * Same as recogniseAsync(Image) without the JavaFX toolkit, used by the headless batch mode.
+     *
+     * @param bufferedImage image to be recognised.
+     * @return a future of the OCR request result, completed with null if the image cannot be encoded.
+     */
+    public CompletableFuture<Response> recogniseAsync(BufferedImage bufferedImage) {
+        return recogniseAsync(() -> bufferedImage);
+    }
 
-        // convert javafx.scene.image.Image to java.awt.image.BufferedImage
-        var bufferedImage = SwingFXUtils.fromFXImage(image, null);
+    /**
+     * @param imageSupplier supplier of the image to be recognised, called on the IO.OCRExecutor, may return null.
+     * @return a future of the OCR request result, completed with null if the image cannot be encoded.
+     */
+    private CompletableFuture<Response> recogniseAsync(Supplier<BufferedImage> imageSupplier) {
 
         try {
-            // BufferedImage to byte array output stream
-            ImageIO.write(bufferedImage, "png", byteArrayOutputStream);
-            // byte array output stream to byte[]
-            var imageInByte = byteArrayOutputStream.toByteArray();
-            // add header of "src"
-            var src = "data:image/jpg;base64," + Base64.getEncoder().encodeToString(imageInByte);
-            // replace original "src" with new encoded value
-            parameters.addProperty("src", src);
-            return true;
-        } catch (IOException e) {
-            return false;
+            return CompletableFuture.supplyAsync(() -> recognise(imageSupplier), OCRExecutor::execute).thenCompose(future -> future);
+        } catch (RejectedExecutionException e) {
+            // too many pending requests or the app is quitting
+            return CompletableFuture.completedFuture(null);
         }
 
     }
 
     /**
-     * Override the supertype method.
+     * Get the image, and release its pixels once the result is received.
      *
-     * @return OCR request result.
+     * @param imageSupplier supplier of the image to be recognised.
+     * @return a future of the OCR request result, completed with null if the image cannot be read.
+     */
+    private CompletableFuture<Response> recognise(Supplier<BufferedImage> imageSupplier) {
+
+        var timingReport = new TimingReport();
+
+        // read javafx.scene.image.Image into a pooled java.awt.image.BufferedImage if needed
+        var bufferedImage = imageSupplier.get();
+        timingReport.mark("convert");
+
+        if (bufferedImage == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        var future = recognise(bufferedImage, timingReport);
+
+        // the pixels are used until the result is stored with its thumbnail
+        future.whenComplete((response, throwable) -> FXImageBridge.release(bufferedImage));
+
+        return future;
+
+    }
+
+    /**
+     * Look up the IO.ResultCache and the IO.HistoryStore, encode the image and send the request if no result is found.
+     *
+     * @param bufferedImage image to be recognised.
+     * @param timingReport  report to record the time of each stage.
+     * @return a future of the OCR request result.
+     */
+    private CompletableFuture<Response> recognise(BufferedImage bufferedImage, TimingReport timingReport) {
+
+        // results of different profiles are cached apart
+        var snapshot = PreferenceHelper.getSnapshot();
+        var key = snapshot.getOCRProfile().getCacheKey(ResultCache.getKey(bufferedImage));
+        var cachedResponse = ResultCache.get(key);
+        timingReport.mark("cache");
+
+        if (cachedResponse != null) {
+            return CompletableFuture.completedFuture(cachedResponse);
+        }
+
+        // share the request in flight for the same image instead of sending another one
+        var future = new CompletableFuture<Response>();
+        var inFlightFuture = IN_FLIGHT_MAP.putIfAbsent(key, future);
+
+        if (inFlightFuture != null) {
+            COALESCED_COUNT.incrementAndGet();
+            timingReport.mark("coalesce");
+            // a copy so that a caller cannot complete the shared future
+            return inFlightFuture.copy();
+        }
+
+        // remove the entry only after the result is cached so that later callers hit the cache
+        future.whenComplete((response, throwable) -> IN_FLIGHT_MAP.remove(key, future));
+
+        try {
+
+            // the previous request for the image may have completed after the first lookup
+            cachedResponse = ResultCache.get(key);
+            if (cachedResponse != null) {
+                future.complete(cachedResponse);
+                return future.copy();
+            }
+
+            // reuse a past result evicted from the cache
+            var storedResponse = HistoryStore.get(key);
+            timingReport.mark("history");
+            if (storedResponse != null) {
+                ResultCache.put(key, storedResponse);
+                future.complete(storedResponse);
+                return future.copy();
+            }
+
+            var outputStream = encode(bufferedImage, timingReport);
+
+            if (outputStream == null) {
+                future.complete(null);
+                return future.copy();
+            }
+
+            sendAsync(outputStream, snapshot).whenComplete((response, throwable) -> {
+                if (throwable == null) {
+                    ResultCache.put(key, response);
+                    HistoryStore.append(key, bufferedImage, response);
+                    future.complete(response);
+                } else {
+                    future.completeExceptionally(throwable);
+                }
+            });
+
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+
+        return future.copy();
+
+    }
+
+    /**
+     * @return number of recognitions served by a request already in flight for the same image.
      */
-    @Override
-    public Response call() {
-        return OCRRequestHelper.getResult(parameters);
+    public static long getCoalescedCount() {
+        return COALESCED_COUNT.get();
     }
 
 }
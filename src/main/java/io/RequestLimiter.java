@@ -0,0 +1,204 @@
+package io;
+
+import java.net.http.HttpResponse;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+
+/**
+ * IO.RequestLimiter.java
+ * Client-side rate limiter of the requests to Mathpix API.
+ * A token bucket caps the request rate, and the number of requests in flight is adjusted AIMD-style:
+ * increased by 1 / limit on each fast response, and decreased on slow responses, HTTP 429/5xx and failures.
+ * Requests over the limits are queued instead of being discarded.
+ */
+public class RequestLimiter {
+
+    private static final double TOKENS_PER_SECOND = 10;
+    private static final double BUCKET_CAPACITY = 10;
+
+    private static final double MIN_CONCURRENCY = 1;
+    private static final double MAX_CONCURRENCY = 32;
+    private static final double INITIAL_CONCURRENCY = 4;
+
+    // multiplicative decrease factor for HTTP 429/5xx and failures
+    private static final double BACKOFF_RATIO = 0.5;
+    // multiplicative decrease factor for latency above the tolerance
+    private static final double LATENCY_BACKOFF_RATIO = 0.9;
+    // latency above the tolerance times the minimum observed latency is treated as congestion
+    private static final double LATENCY_TOLERANCE = 2;
+
+    private static final Queue<Runnable> QUEUE = new ArrayDeque<>();
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "request-limiter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static double tokens = BUCKET_CAPACITY;
+    private static long lastRefillNanos = System.nanoTime();
+
+    private static double concurrencyLimit = INITIAL_CONCURRENCY;
+    private static int inFlightCount = 0;
+    private static long minLatencyNanos = Long.MAX_VALUE;
+
+    private static boolean isDispatchScheduled = false;
+
+    /**
+     * Queue the request and send it once a token and a concurrency permit are available.
+     *
+     * @param requestSupplier supplier sending the request.
+     * @param <T>             response body type.
+     * @return a future of the HTTP response.
+     */
+    public static <T> CompletableFuture<HttpResponse<T>> submit(Supplier<CompletableFuture<HttpResponse<T>>> requestSupplier) {
+
+        var result = new CompletableFuture<HttpResponse<T>>();
+        var queuedNanos = System.nanoTime();
+
+        synchronized (RequestLimiter.class) {
+            QUEUE.add(() -> {
+                var startNanos = System.nanoTime();
+                Metrics.record("limiter_wait", startNanos - queuedNanos);
+                CompletableFuture<HttpResponse<T>> future;
+                try {
+                    future = requestSupplier.get();
+                } catch (RuntimeException e) {
+                    future = CompletableFuture.failedFuture(e);
+                }
+                future.whenComplete((response, throwable) -> {
+                    onComplete(System.nanoTime() - startNanos, throwable == null ? response.statusCode() : -1);
+                    if (throwable == null) {
+                        result.complete(response);
+                    } else {
+                        result.completeExceptionally(throwable);
+                    }
+                });
+            });
+        }
+
+        dispatch();
+
+        return result;
+
+    }
+
+    /**
+     * Add the tokens generated since the last refill.
+     */
+    private static void refill() {
+        var now = System.nanoTime();
+        tokens = Math.min(BUCKET_CAPACITY, tokens + (now - lastRefillNanos) / 1e9 * TOKENS_PER_SECOND);
+        lastRefillNanos = now;
+    }
+
+    /**
+     * Send the queued requests allowed by the limits, and schedule the next dispatch if waiting for tokens.
+     */
+    private static void dispatch() {
+
+        var readyQueue = new ArrayDeque<Runnable>();
+
+        synchronized (RequestLimiter.class) {
+
+            refill();
+
+            while (!QUEUE.isEmpty() && inFlightCount < (int) concurrencyLimit && tokens >= 1) {
+                tokens -= 1;
+                inFlightCount++;
+                readyQueue.add(QUEUE.poll());
+            }
+
+            // wait for the next token, the completion of a request in flight will dispatch as well
+            if (!QUEUE.isEmpty() && inFlightCount < (int) concurrencyLimit && !isDispatchScheduled) {
+                isDispatchScheduled = true;
+                var waitNanos = (long) ((1 - tokens) / TOKENS_PER_SECOND * 1e9);
+                SCHEDULER.schedule(() -> {
+                    synchronized (RequestLimiter.class) {
+                        isDispatchScheduled = false;
+                    }
+                    dispatch();
+                }, Math.max(waitNanos, 0), TimeUnit.NANOSECONDS);
+            }
+
+        }
+
+        // send outside of the lock
+        for (Runnable runnable : readyQueue) {
+            runnable.run();
+        }
+
+    }
+
+    /**
+     * Adjust the concurrency limit with the result of a finished request.
+     *
+     * @param latencyNanos latency of the request.
+     * @param statusCode   HTTP status code, -1 if the request failed.
+     */
+    private static void onComplete(long latencyNanos, int statusCode) {
+
+        synchronized (RequestLimiter.class) {
+
+            inFlightCount--;
+
+            if (statusCode == -1 || statusCode == 429 || statusCode >= 500) {
+                concurrencyLimit = Math.max(MIN_CONCURRENCY, concurrencyLimit * BACKOFF_RATIO);
+            } else {
+                minLatencyNanos = Math.min(minLatencyNanos, latencyNanos);
+                if (latencyNanos > LATENCY_TOLERANCE * minLatencyNanos) {
+                    concurrencyLimit = Math.max(MIN_CONCURRENCY, concurrencyLimit * LATENCY_BACKOFF_RATIO);
+                } else {
+                    concurrencyLimit = Math.min(MAX_CONCURRENCY, concurrencyLimit + 1 / concurrencyLimit);
+                }
+            }
+
+        }
+
+        dispatch();
+
+    }
+
+    /**
+     * @return number of requests waiting in the queue.
+     */
+    public static synchronized int getQueueDepth() {
+        return QUEUE.size();
+    }
+
+    /**
+     * @return number of requests in flight.
+     */
+    public static synchronized int getInFlightCount() {
+        return inFlightCount;
+    }
+
+    /**
+     * @return number of requests allowed in flight.
+     */
+    public static synchronized int getConcurrencyLimit() {
+        return (int) concurrencyLimit;
+    }
+
+    /**
+     * @return number of free concurrency permits.
+     */
+    public static synchronized int getAvailablePermits() {
+        return Math.max((int) concurrencyLimit - inFlightCount, 0);
+    }
+
+    /**
+     * @return number of tokens in the bucket.
+     */
+    public static synchronized double getAvailableTokens() {
+        refill();
+        return tokens;
+    }
+
+}
@@ -0,0 +1,92 @@
+package io;
+
+import com.google.gson.JsonObject;
+
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+
+/**
+ * IO.RequestTemplate.java
+ * Immutable request parameters serialised once, so that a request only splices the encoded image into them.
+ * The bytes are never modified or exposed after construction, so one template is shared by any number of
+ * concurrent requests without locking.
+ */
+public final class RequestTemplate {
+
+    // JSON parameters before and after the "src" value, the prefix ends with the data URL header of each codec
+    private final Map<ImageCodec, byte[]> jsonPrefixMap;
+    private final byte[] jsonSuffix;
+
+    // parameters with an empty "src" value
+    private final String emptyJson;
+
+    // options part of a multipart upload, the parameters without "src"
+    private final byte[] optionsJson;
+
+    /**
+     * Serialise the parameters, which are not kept.
+     *
+     * @param options request parameters without "src", e.g. formats, data options and metadata.
+     */
+    public RequestTemplate(JsonObject options) {
+
+        // "src" is the first property so that the prefix is short
+        var parameters = new JsonObject();
+        parameters.addProperty("src", "");
+        for (var entry : options.entrySet()) {
+            if (!"src".equals(entry.getKey())) {
+                parameters.add(entry.getKey(), entry.getValue().deepCopy());
+            }
+        }
+
+        // split the serialised parameters at the empty "src" value
+        emptyJson = parameters.toString();
+        var srcIndex = emptyJson.indexOf("\"src\":\"\"") + "\"src\":\"".length();
+
+        var prefixMap = new EnumMap<ImageCodec, byte[]>(ImageCodec.class);
+        for (var codec : ImageCodec.values()) {
+            var srcHeader = "data:" + codec.getMimeType() + ";base64,";
+            prefixMap.put(codec, (emptyJson.substring(0, srcIndex) + srcHeader).getBytes(StandardCharsets.UTF_8));
+        }
+
+        jsonPrefixMap = Collections.unmodifiableMap(prefixMap);
+        jsonSuffix = emptyJson.substring(srcIndex).getBytes(StandardCharsets.UTF_8);
+
+        parameters.remove("src");
+        optionsJson = parameters.toString().getBytes(StandardCharsets.UTF_8);
+
+    }
+
+    /**
+     * @param codec       codec of the encoded image.
+     * @param image       buffer of the encoded image bytes, not modified until the request completes.
+     * @param imageLength number of valid bytes in the buffer.
+     * @return JSON request body with the Base64 encoded image as the "src" value.
+     */
+    public HttpRequest.BodyPublisher newJsonBody(ImageCodec codec, byte[] image, int imageLength) {
+        return new Base64ImageBodyPublisher(jsonPrefixMap.get(codec), image, imageLength, jsonSuffix);
+    }
+
+    /**
+     * @param codec       codec of the encoded image.
+     * @param image       buffer of the encoded image bytes, not modified until the request completes.
+     * @param imageLength number of valid bytes in the buffer.
+     * @return multipart/form-data request body with the raw image bytes.
+     */
+    public MultipartImageBodyPublisher newMultipartBody(ImageCodec codec, byte[] image, int imageLength) {
+        return new MultipartImageBodyPublisher(optionsJson, codec, image, imageLength);
+    }
+
+    /**
+     * @return JSON parameters with an empty "src" value.
+     */
+    @Override
+    public String toString() {
+        return emptyJson;
+    }
+
+}
@@ -1,13 +1,14 @@
 package io;
 
-import com.google.gson.JsonObject;
-
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
  * IO.Response.java
- * used by Gson to deserialize the JSON string to the object.
+ * Decoded by IO.ResponseDecoder, and serialized by Gson with the same JSON layout as the API response.
  */
 public class Response {
 
@@ -15,13 +16,45 @@ public class Response {
 
     private String text;
     private double confidence;
-    private ArrayList<JsonObject> data;
+    private List<DataEntry> data;
+
+    // results of getTypeFromData() by type, null if created by Gson
+    private final transient Map<String, String> typeResultMap = new ConcurrentHashMap<>();
+
+    /**
+     * A data entry with its type, for example "mathml" or "tsv", and its value.
+     */
+    public static final class DataEntry {
+
+        private final String type;
+        private final String value;
+
+        public DataEntry(String type, String value) {
+            this.type = type;
+            this.value = value;
+        }
+
+        /**
+         * @return type of the data.
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return value of the data.
+         */
+        public String getValue() {
+            return value;
+        }
+
+    }
 
     public Response(String error) {
         this.error = error;
     }
 
-    public Response(String error, String text, double confidence, ArrayList<JsonObject> data) {
+    public Response(String error, String text, double confidence, List<DataEntry> data) {
         this.error = error;
         this.text = text;
         this.data = data;
@@ -50,19 +83,39 @@ public class Response {
     }
 
     /**
-     * @return MathML result from data;
+     * @return data entries, empty if none.
+     */
+    public List<DataEntry> getData() {
+        return data == null ? Collections.emptyList() : Collections.unmodifiableList(data);
+    }
+
+    /**
+     * @return results of the type from data, joined once and memoized.
      */
     private String getTypeFromData(String type) {
 
+        if (typeResultMap == null) {
+            return joinTypeFromData(type);
+        }
+
+        return typeResultMap.computeIfAbsent(type, this::joinTypeFromData);
+
+    }
+
+    /**
+     * @return results of the type from data, separated by blank lines.
+     */
+    private String joinTypeFromData(String type) {
+
         if (data == null) {
             return "";
         }
 
         var result = new StringBuilder();
 
-        for (JsonObject jsonObject : data) {
-            if (type.equals(jsonObject.get("type").getAsString())) {
-                result.append(jsonObject.get("value").getAsString()).append("\n\n");
+        for (DataEntry dataEntry : data) {
+            if (type.equals(dataEntry.type)) {
+                result.append(dataEntry.value).append("\n\n");
             }
         }
 
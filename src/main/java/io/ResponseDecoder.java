@@ -0,0 +1,177 @@
+package io;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+
+/**
+ * IO.ResponseDecoder.java
+ * Streaming decoder of Mathpix API responses into IO.Response objects.
+ * Reads the JSON token by token straight from the response body, without a String copy of the body
+ * or a JsonObject tree per data entry. Unknown fields are skipped.
+ */
+public final class ResponseDecoder {
+
+    private ResponseDecoder() {
+    }
+
+    /**
+     * The body is decoded when the supplier is called, and the supplier should be called or closed to release the connection.
+     *
+     * @return body handler streaming the response body into the decoder.
+     */
+    public static HttpResponse.BodyHandler<Supplier<Response>> bodyHandler() {
+        return responseInfo -> HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofInputStream(),
+                DecodingSupplier::new);
+    }
+
+    /**
+     * @param reader reader of a JSON response.
+     * @return decoded response.
+     * @throws IOException        if the reader fails or the JSON ends early.
+     * @throws JsonParseException if the JSON is malformed.
+     */
+    public static Response decode(Reader reader) throws IOException {
+
+        var jsonReader = new JsonReader(reader);
+        // same leniency as Gson.fromJson()
+        jsonReader.setLenient(true);
+
+        String error = null;
+        String text = null;
+        double confidence = 0;
+        List<Response.DataEntry> data = null;
+
+        jsonReader.beginObject();
+
+        while (jsonReader.hasNext()) {
+            switch (jsonReader.nextName()) {
+                case "error" -> error = nextStringOrNull(jsonReader);
+                case "text" -> text = nextStringOrNull(jsonReader);
+                case "confidence" -> confidence = nextDoubleOrZero(jsonReader);
+                case "data" -> data = nextData(jsonReader);
+                default -> jsonReader.skipValue();
+            }
+        }
+
+        jsonReader.endObject();
+
+        return new Response(error, text, confidence, data);
+
+    }
+
+    /**
+     * @return string value, null for a JSON null or a non-primitive value.
+     */
+    private static String nextStringOrNull(JsonReader jsonReader) throws IOException {
+
+        var token = jsonReader.peek();
+
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return jsonReader.nextString();
+        }
+
+        if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(jsonReader.nextBoolean());
+        }
+
+        jsonReader.skipValue();
+
+        return null;
+
+    }
+
+    /**
+     * @return number value, 0 for a JSON null.
+     */
+    private static double nextDoubleOrZero(JsonReader jsonReader) throws IOException {
+
+        if (jsonReader.peek() == JsonToken.NULL) {
+            jsonReader.nextNull();
+            return 0;
+        }
+
+        return jsonReader.nextDouble();
+
+    }
+
+    /**
+     * @return type and value of each data entry, null for a JSON null.
+     */
+    private static List<Response.DataEntry> nextData(JsonReader jsonReader) throws IOException {
+
+        if (jsonReader.peek() == JsonToken.NULL) {
+            jsonReader.nextNull();
+            return null;
+        }
+
+        var data = new ArrayList<Response.DataEntry>();
+
+        jsonReader.beginArray();
+
+        while (jsonReader.hasNext()) {
+
+            String type = null;
+            String value = null;
+
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                switch (jsonReader.nextName()) {
+                    case "type" -> type = nextStringOrNull(jsonReader);
+                    case "value" -> value = nextStringOrNull(jsonReader);
+                    default -> jsonReader.skipValue();
+                }
+            }
+            jsonReader.endObject();
+
+            data.add(new Response.DataEntry(type, value));
+
+        }
+
+        jsonReader.endArray();
+
+        return data;
+
+    }
+
+    /**
+     * Decodes the response body stream once when called, closing the stream afterwards.
+     */
+    private static final class DecodingSupplier implements Supplier<Response>, Closeable {
+
+        private final InputStream inputStream;
+
+        private DecodingSupplier(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public Response get() {
+            try (var reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
+                return decode(reader);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            inputStream.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,283 @@
+package io;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * IO.ResultCache.java
+ * Content-addressed cache of successful OCR results, keyed by the SHA-256 hash of the decoded pixels.
+ * An in-memory LRU tier is backed by an on-disk tier that survives restarts, both evicted by size and TTL.
+ */
+public class ResultCache {
+
+    private static final int MAX_MEMORY_ENTRIES = 256;
+    private static final int MAX_DISK_ENTRIES = 4096;
+    private static final long TTL_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    private static final String FILE_EXTENSION = ".json";
+    private static final Path CACHE_DIRECTORY = Paths.get(System.getProperty("user.home"), ".img2latex", "cache");
+
+    private static final Gson GSON = new Gson();
+
+    private static final Map<String, CacheEntry> MEMORY_CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            return size() > MAX_MEMORY_ENTRIES;
+        }
+    };
+
+    // number of writes since the last disk eviction check
+    private static int diskWriteCount = 0;
+
+    /**
+     * In-memory cache entry with its creation time.
+     */
+    private static final class CacheEntry {
+
+        private final Response response;
+        private final long createdMillis;
+
+        private CacheEntry(Response response, long createdMillis) {
+            this.response = response;
+            this.createdMillis = createdMillis;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() - createdMillis > TTL_MILLIS;
+        }
+
+    }
+
+    /**
+     * Hash the size and the decoded pixels of the image as non-premultiplied ARGB.
+     *
+     * @param image decoded image.
+     * @return hex string of the SHA-256 hash.
+     */
+    public static String getKey(BufferedImage image) {
+
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        var width = image.getWidth();
+        var height = image.getHeight();
+        var buffer = ByteBuffer.allocate(Math.max(width, 2) * Integer.BYTES);
+
+        buffer.putInt(width).putInt(height).flip();
+        messageDigest.update(buffer);
+
+        // pixels are hashed as non-premultiplied ARGB whatever the image type, so that the same picture decoded by
+        // ImageIO or bridged from JavaFX has the same key
+        var dataBuffer = image.getRaster().getDataBuffer();
+        var isPackedInt = (image.getType() == BufferedImage.TYPE_INT_ARGB || image.getType() == BufferedImage.TYPE_INT_RGB)
+                && dataBuffer instanceof DataBufferInt && image.getRaster().getParent() == null
+                && dataBuffer.getSize() == width * height;
+        var isInPlace = isPackedInt && image.getType() == BufferedImage.TYPE_INT_ARGB;
+        var pixels = isPackedInt ? ((DataBufferInt) dataBuffer).getData() : null;
+        var row = isInPlace ? pixels : new int[width];
+
+        for (var y = 0; y < height; y++) {
+            var offset = 0;
+            if (isInPlace) {
+                // hash the packed pixels in place
+                offset = dataBuffer.getOffset() + y * width;
+            } else if (isPackedInt) {
+                // opaque pixels without the alpha byte
+                var rowOffset = dataBuffer.getOffset() + y * width;
+                for (var x = 0; x < width; x++) {
+                    row[x] = 0xff000000 | pixels[rowOffset + x] & 0xffffff;
+                }
+            } else {
+                image.getRGB(0, y, width, 1, row, 0, width);
+            }
+            buffer.clear();
+            buffer.asIntBuffer().put(row, offset, width);
+            buffer.limit(width * Integer.BYTES);
+            messageDigest.update(buffer);
+        }
+
+        var hash = messageDigest.digest();
+        var hexBuilder = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hexBuilder.append(Character.forDigit(b >> 4 & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return hexBuilder.toString();
+
+    }
+
+    /**
+     * Look up the memory tier first, then the disk tier.
+     *
+     * @param key key of the image.
+     * @return cached response, null if not found or expired.
+     */
+    public static Response get(String key) {
+
+        synchronized (MEMORY_CACHE) {
+            var entry = MEMORY_CACHE.get(key);
+            if (entry != null) {
+                if (!entry.isExpired()) {
+                    return entry.response;
+                }
+                MEMORY_CACHE.remove(key);
+            }
+        }
+
+        var entry = readFromDisk(key);
+        if (entry == null) {
+            return null;
+        }
+
+        synchronized (MEMORY_CACHE) {
+            MEMORY_CACHE.put(key, entry);
+        }
+
+        return entry.response;
+
+    }
+
+    /**
+     * Store a response, error responses are not cached.
+     *
+     * @param key      key of the image.
+     * @param response response to be cached.
+     */
+    public static void put(String key, Response response) {
+
+        if (response == null || response.getError() != null) {
+            return;
+        }
+
+        var entry = new CacheEntry(response, System.currentTimeMillis());
+
+        synchronized (MEMORY_CACHE) {
+            MEMORY_CACHE.put(key, entry);
+        }
+
+        writeToDisk(key, response);
+
+    }
+
+    /**
+     * Clear both tiers.
+     */
+    public static void clear() {
+
+        synchronized (MEMORY_CACHE) {
+            MEMORY_CACHE.clear();
+        }
+
+        var files = CACHE_DIRECTORY.toFile().listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+    }
+
+    /**
+     * @return number of entries in the memory tier.
+     */
+    public static int getMemorySize() {
+        synchronized (MEMORY_CACHE) {
+            return MEMORY_CACHE.size();
+        }
+    }
+
+    /**
+     * @param key key of the image.
+     * @return cache entry read from the disk, null if not found, expired or broken.
+     */
+    private static CacheEntry readFromDisk(String key) {
+
+        var path = CACHE_DIRECTORY.resolve(key + FILE_EXTENSION);
+
+        try {
+            var createdMillis = Files.getLastModifiedTime(path).toMillis();
+            if (System.currentTimeMillis() - createdMillis > TTL_MILLIS) {
+                Files.deleteIfExists(path);
+                return null;
+            }
+            try (var reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                return new CacheEntry(ResponseDecoder.decode(reader), createdMillis);
+            }
+        } catch (IOException | JsonParseException e) {
+            return null;
+        }
+
+    }
+
+    /**
+     * Write the response to a temporary file and move it in place, then evict the oldest files if needed.
+     *
+     * @param key      key of the image.
+     * @param response response to be written.
+     */
+    private static void writeToDisk(String key, Response response) {
+
+        try {
+            Files.createDirectories(CACHE_DIRECTORY);
+            var temporaryPath = Files.createTempFile(CACHE_DIRECTORY, key, ".tmp");
+            Files.writeString(temporaryPath, GSON.toJson(response), StandardCharsets.UTF_8);
+            Files.move(temporaryPath, CACHE_DIRECTORY.resolve(key + FILE_EXTENSION), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ignored) {
+            // the disk tier is best effort
+            return;
+        }
+
+        synchronized (ResultCache.class) {
+            // check the directory once every 64 writes
+            if (++diskWriteCount % 64 == 1) {
+                evictDiskEntries();
+            }
+        }
+
+    }
+
+    /**
+     * Delete expired files and the oldest ones above the size limit.
+     */
+    private static void evictDiskEntries() {
+
+        var files = CACHE_DIRECTORY.toFile().listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+
+        var now = System.currentTimeMillis();
+        for (var i = 0; i < files.length; i++) {
+            if (i >= MAX_DISK_ENTRIES || now - files[i].lastModified() > TTL_MILLIS) {
+                files[i].delete();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,309 @@
+package io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+
+/**
+ * IO.RetryPolicy.java
+ * Retries failed, HTTP 429 and 5xx requests with exponential backoff and full jitter.
+ * Optionally hedges each attempt with a second one if no response is received within the p95 latency.
+ * The maximum number of attempts, the attempt timeout and the hedging option are set in IO.PreferenceHelper.
+ */
+public class RetryPolicy {
+
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 8000;
+
+    // latencies of the recent successful attempts used for the p95 estimation
+    private static final int LATENCY_WINDOW_SIZE = 128;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    private static final long[] LATENCY_WINDOW = new long[LATENCY_WINDOW_SIZE];
+    private static int latencySampleCount = 0;
+
+    private static final AtomicLong ATTEMPT_COUNT = new AtomicLong();
+    private static final AtomicLong RETRY_COUNT = new AtomicLong();
+    private static final AtomicLong HEDGE_COUNT = new AtomicLong();
+    private static final AtomicLong FAILED_ATTEMPT_COUNT = new AtomicLong();
+    private static final AtomicLong EXHAUSTED_COUNT = new AtomicLong();
+
+    /**
+     * Execute the request with retries.
+     *
+     * @param preferenceSnapshot settings of the request.
+     * @param requestSupplier    supplier sending a new attempt of the request.
+     * @param <T>                response body type.
+     * @return a future of the first non-retryable response, or the outcome of the last attempt.
+     */
+    public static <T> CompletableFuture<HttpResponse<T>> execute(PreferenceSnapshot preferenceSnapshot,
+                                                                 Supplier<CompletableFuture<HttpResponse<T>>> requestSupplier) {
+
+        var result = new CompletableFuture<HttpResponse<T>>();
+        attempt(requestSupplier, 1, preferenceSnapshot.getRetryMaxAttempts(), preferenceSnapshot.getHedgedRequestOption(), result);
+
+        return result;
+
+    }
+
+    /**
+     * @param preferenceSnapshot settings of the request.
+     * @return per-attempt timeout in seconds.
+     */
+    public static int getAttemptTimeoutSeconds(PreferenceSnapshot preferenceSnapshot) {
+        return Math.max(preferenceSnapshot.getRequestTimeoutSeconds(), 1);
+    }
+
+    /**
+     * @return whether the outcome is worth another attempt.
+     */
+    private static boolean isRetryable(HttpResponse<?> response, Throwable throwable) {
+        return throwable != null || response.statusCode() == 429 || response.statusCode() >= 500;
+    }
+
+    /**
+     * Send an attempt and schedule the next one if the outcome is retryable.
+     */
+    private static <T> void attempt(Supplier<CompletableFuture<HttpResponse<T>>> requestSupplier, int attemptNumber,
+                                    int maxAttempts, boolean isHedged, CompletableFuture<HttpResponse<T>> result) {
+
+        var hedgeDelayMillis = isHedged ? getP95LatencyMillis() : -1;
+        var future = hedgeDelayMillis < 0 ? timedAttempt(requestSupplier) : hedgedAttempt(requestSupplier, hedgeDelayMillis);
+
+        future.whenComplete((response, throwable) -> {
+
+            // a failure of the retry logic must not leave the caller waiting forever
+            try {
+
+                if (!isRetryable(response, throwable)) {
+                    result.complete(response);
+                    return;
+                }
+
+                if (attemptNumber >= maxAttempts) {
+                    EXHAUSTED_COUNT.incrementAndGet();
+                    if (throwable == null) {
+                        result.complete(response);
+                    } else {
+                        result.completeExceptionally(throwable);
+                    }
+                    return;
+                }
+
+                RETRY_COUNT.incrementAndGet();
+                var backoffMillis = getBackoffMillis(attemptNumber, response);
+                discard(response);
+
+                CompletableFuture.delayedExecutor(backoffMillis, TimeUnit.MILLISECONDS).execute(() -> {
+                    try {
+                        attempt(requestSupplier, attemptNumber + 1, maxAttempts, isHedged, result);
+                    } catch (Throwable t) {
+                        result.completeExceptionally(t);
+                    }
+                });
+
+            } catch (Throwable t) {
+                discard(response);
+                result.completeExceptionally(t);
+            }
+
+        });
+
+    }
+
+    /**
+     * Full jitter backoff, at least the Retry-After header value of an HTTP 429 response if any.
+     *
+     * @param attemptNumber number of the failed attempt, starting from 1.
+     * @param response      response of the failed attempt, null if it failed without a response.
+     * @return milliseconds to wait before the next attempt.
+     */
+    private static long getBackoffMillis(int attemptNumber, HttpResponse<?> response) {
+
+        var ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attemptNumber - 1, 16));
+        var backoffMillis = ThreadLocalRandom.current().nextLong(ceiling + 1);
+
+        if (response != null && response.statusCode() == 429) {
+            var retryAfterMillis = response.headers().firstValue("Retry-After").map(RetryPolicy::parseRetryAfterMillis).orElse(0L);
+            backoffMillis = Math.max(backoffMillis, Math.min(retryAfterMillis, MAX_BACKOFF_MILLIS));
+        }
+
+        return backoffMillis;
+
+    }
+
+    /**
+     * Parse a Retry-After header value, either delta-seconds or an HTTP-date as allowed by RFC 7231.
+     *
+     * @param value header value.
+     * @return milliseconds to wait, 0 if the value is in the past or cannot be parsed.
+     */
+    static long parseRetryAfterMillis(String value) {
+
+        value = value.strip();
+
+        if (!value.isEmpty() && value.chars().allMatch(Character::isDigit)) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+            } catch (NumberFormatException e) {
+                // too many digits, wait as long as allowed
+                return Long.MAX_VALUE;
+            }
+        }
+
+        try {
+            var retryAt = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(Duration.between(Instant.now(), retryAt.toInstant()).toMillis(), 0);
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+
+    }
+
+    /**
+     * Send a single attempt and record its outcome.
+     */
+    private static <T> CompletableFuture<HttpResponse<T>> timedAttempt(Supplier<CompletableFuture<HttpResponse<T>>> requestSupplier) {
+
+        ATTEMPT_COUNT.incrementAndGet();
+        var startNanos = System.nanoTime();
+
+        return requestSupplier.get().whenComplete((response, throwable) -> {
+            if (isRetryable(response, throwable)) {
+                FAILED_ATTEMPT_COUNT.incrementAndGet();
+            } else {
+                recordLatency(System.nanoTime() - startNanos);
+            }
+        });
+
+    }
+
+    /**
+     * Send an attempt, and a hedge attempt if no response is received after the delay.
+     * The first non-retryable outcome wins, otherwise the last one is used.
+     */
+    private static <T> CompletableFuture<HttpResponse<T>> hedgedAttempt(Supplier<CompletableFuture<HttpResponse<T>>> requestSupplier,
+                                                                      long hedgeDelayMillis) {
+
+        var result = new CompletableFuture<HttpResponse<T>>();
+        var pendingCount = new AtomicInteger(1);
+
+        BiConsumer<HttpResponse<T>, Throwable> handler = (response, throwable) -> {
+            if (!isRetryable(response, throwable) || pendingCount.decrementAndGet() == 0) {
+                if (throwable == null) {
+                    if (!result.complete(response)) {
+                        // the other attempt has won
+                        discard(response);
+                    }
+                } else {
+                    result.completeExceptionally(throwable);
+                }
+            } else {
+                discard(response);
+            }
+        };
+
+        timedAttempt(requestSupplier).whenComplete(handler);
+
+        CompletableFuture.delayedExecutor(hedgeDelayMillis, TimeUnit.MILLISECONDS).execute(() -> {
+            if (!result.isDone()) {
+                pendingCount.incrementAndGet();
+                HEDGE_COUNT.incrementAndGet();
+                timedAttempt(requestSupplier).whenComplete(handler);
+            }
+        });
+
+        return result;
+
+    }
+
+    /**
+     * Release the connection of a dropped response if its body is still being streamed.
+     *
+     * @param response dropped response, could be null.
+     */
+    private static void discard(HttpResponse<?> response) {
+
+        if (response != null && response.body() instanceof Closeable) {
+            try {
+                ((Closeable) response.body()).close();
+            } catch (IOException ignored) {
+                // nothing more to release
+            }
+        }
+
+    }
+
+    /**
+     * @param latencyNanos latency of a successful attempt.
+     */
+    private static synchronized void recordLatency(long latencyNanos) {
+        LATENCY_WINDOW[latencySampleCount++ % LATENCY_WINDOW_SIZE] = latencyNanos;
+    }
+
+    /**
+     * @return p95 latency of the recent successful attempts, -1 if there are not enough samples.
+     */
+    public static synchronized long getP95LatencyMillis() {
+
+        if (latencySampleCount < MIN_LATENCY_SAMPLES) {
+            return -1;
+        }
+
+        var samples = Arrays.copyOf(LATENCY_WINDOW, Math.min(latencySampleCount, LATENCY_WINDOW_SIZE));
+        Arrays.sort(samples);
+
+        return TimeUnit.NANOSECONDS.toMillis(samples[(int) Math.ceil(samples.length * 0.95) - 1]);
+
+    }
+
+    /**
+     * @return number of attempts sent, including retries and hedges.
+     */
+    public static long getAttemptCount() {
+        return ATTEMPT_COUNT.get();
+    }
+
+    /**
+     * @return number of retries scheduled.
+     */
+    public static long getRetryCount() {
+        return RETRY_COUNT.get();
+    }
+
+    /**
+     * @return number of hedge attempts sent.
+     */
+    public static long getHedgeCount() {
+        return HEDGE_COUNT.get();
+    }
+
+    /**
+     * @return number of attempts failed or answered with HTTP 429/5xx.
+     */
+    public static long getFailedAttemptCount() {
+        return FAILED_ATTEMPT_COUNT.get();
+    }
+
+    /**
+     * @return number of requests failed after all attempts.
+     */
+    public static long getExhaustedCount() {
+        return EXHAUSTED_COUNT.get();
+    }
+
+}
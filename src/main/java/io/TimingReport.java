@@ -0,0 +1,69 @@
+package io;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * IO.TimingReport.java
+ * Records the elapsed time of each stage of a single request.
+ * Every stage is also recorded in the IO.Metrics histogram of the same name.
+ */
+public class TimingReport {
+
+    private final Map<String, Long> stageNanosMap = new LinkedHashMap<>();
+
+    private long lastTimestamp = System.nanoTime();
+
+    /**
+     * Record the time elapsed since the last mark as the given stage.
+     *
+     * @param stage name of the finished stage.
+     */
+    public void mark(String stage) {
+        var now = System.nanoTime();
+        stageNanosMap.merge(stage, now - lastTimestamp, Long::sum);
+        Metrics.record(stage, now - lastTimestamp);
+        lastTimestamp = now;
+    }
+
+    /**
+     * Restart the clock without recording a stage.
+     */
+    public void skip() {
+        lastTimestamp = System.nanoTime();
+    }
+
+    /**
+     * @return elapsed nanoseconds of each stage in the recorded order.
+     */
+    public Map<String, Long> getStageNanosMap() {
+        return Collections.unmodifiableMap(stageNanosMap);
+    }
+
+    /**
+     * @return elapsed nanoseconds of all recorded stages.
+     */
+    public long getTotalNanos() {
+        return stageNanosMap.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * @return report like "trim: 1.20 ms, encode: 8.31 ms, total: 9.51 ms".
+     */
+    @Override
+    public String toString() {
+
+        var builder = new StringBuilder();
+
+        for (var entry : stageNanosMap.entrySet()) {
+            builder.append(entry.getKey()).append(": ").
+                    append(String.format("%.2f ms", entry.getValue() / 1e6)).append(", ");
+        }
+
+        return builder.append(String.format("total: %.2f ms", getTotalNanos() / 1e6)).toString();
+
+    }
+
+}
@@ -37,7 +37,7 @@ public final class APICredentialsTab extends Tab {
         // load initial API credential config
         var apiCredentialConfig = PreferenceHelper.getAPICredentialConfig();
 
-        // 3 * 2 layout
+        // 4 * 2 layout
         var gridPane = new GridPane();
         gridPane.setHgap(3);
         gridPane.setVgap(2);
@@ -111,6 +111,23 @@ public final class APICredentialsTab extends Tab {
 
         gridPane.add(keyTextField, 1, 2);
 
+        // add "Endpoint:" label
+        var endpointLabel = new Label("Endpoint:");
+        GridPane.setMargin(endpointLabel, new Insets(MINIMUM_MARGIN));
+        gridPane.add(endpointLabel, 0, 3);
+
+        // add API endpoint TextFiled, empty for the default endpoint
+        var endpointTextField = new TextField();
+        endpointTextField.setPromptText(IOUtils.DEFAULT_API_URL);
+        endpointTextField.setText(PreferenceHelper.getAPIUrl());
+        endpointTextField.setPrefWidth(280);
+        GridPane.setMargin(endpointTextField, new Insets(MINIMUM_MARGIN, MINIMUM_MARGIN, MINIMUM_MARGIN, 0));
+
+        // save to Java Preferences API when text is changed
+        endpointTextField.textProperty().addListener((observable, oldValue, newValue) -> PreferenceHelper.setAPIUrl(newValue));
+
+        gridPane.add(endpointTextField, 1, 3);
+
         setContent(gridPane);
 
     }
@@ -1,6 +1,9 @@
 package ui;
 
+import io.HistoryStore;
 import io.IOUtils;
+import io.OCRExecutor;
+import io.PreferenceHelper;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.scene.Scene;
@@ -100,6 +103,9 @@ public final class App extends Application {
             });
             // set the app shutdown when the window is closed
             stage.setOnCloseRequest(e -> {
+                OCRExecutor.shutdown();
+                HistoryStore.shutdown();
+                PreferenceHelper.shutdown();
                 Platform.exit();
                 System.exit(0);
             });
@@ -167,6 +173,11 @@ public final class App extends Application {
             // remove the icon
             tray.remove(trayIcon);
 
+            // stop pending OCR requests
+            OCRExecutor.shutdown();
+            HistoryStore.shutdown();
+            PreferenceHelper.shutdown();
+
             Platform.exit();
             System.exit(0);
         });
@@ -1,18 +1,23 @@
 package ui;
 
+import io.HistoryStore;
 import io.IOUtils;
+import io.Metrics;
 import io.PreferenceHelper;
 import io.Recognition;
 import io.Response;
-import javafx.concurrent.Task;
+import javafx.application.Platform;
 import javafx.geometry.HPos;
 import javafx.geometry.Insets;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TextField;
+import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.Clipboard;
 import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.Background;
 import javafx.scene.layout.BackgroundFill;
 import javafx.scene.layout.Border;
@@ -26,16 +31,22 @@ import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 
+import java.io.ByteArrayInputStream;
 import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletionException;
 
 
 /**
  * UI.BackGridPane.java
  * Used for display current clipboard image and confidence progressbar.
- * The back grid panel has 3 Labels, 2 ImageViews, 1 Button, and 1 ProgressBar.
+ * The back grid panel has 4 Labels, 2 ImageViews, 1 Button, 1 ProgressBar, 1 TextField, and 1 ListView.
+ * Submitted images are queued and recognised concurrently up to a limit, and listed in the history.
  */
 public class BackGridPane extends GridPane {
 
@@ -43,17 +54,42 @@ public class BackGridPane extends GridPane {
     private static final int PREFERRED_WIDTH = 300;
     private static final int PREFERRED_HEIGHT = 100;
 
+    private static final int HISTORY_HEIGHT = 160;
+
+    // images recognised at the same time, the others wait in the submission queue
+    private static final int MAX_CONCURRENT_SUBMISSIONS = 4;
+    private static final int MAX_QUEUED_SUBMISSIONS = 32;
+
+    private static final int MAX_SEARCH_RESULTS = 100;
+
     private static final Recognition RECOGNITION = new Recognition();
 
     private static final ImageView CLIPBOARD_IMAGE_VIEW = new ImageView();
     private static final ImageView RENDERED_IMAGE_VIEW = new ImageView();
     private static final Label WAITING_TEXT_LABEL = new Label("Waiting...");
+
+    private static final TextField HISTORY_SEARCH_TEXT_FIELD = new TextField();
     private static final ProgressBar CONFIDENCE_PROGRESS_BAR = new ProgressBar(0);
 
     private static final Clipboard clipboard = Clipboard.getSystemClipboard();
 
+    private final ClipboardWatcher clipboardWatcher = new ClipboardWatcher(this::clipboardImageHandler);
+
     private long lastUpdateCompletionTimestamp = Instant.now().getEpochSecond();
-    private long lastRequestCompletionTimestamp = Instant.now().getEpochSecond();
+
+    // the following fields are only accessed on the JavaFX application thread
+    // sequence number of the last render
+    private int lastRenderSequence = 0;
+    // submitted entries waiting for a free slot, and number of entries being recognised
+    private final Queue<HistoryEntry> submissionQueue = new ArrayDeque<>();
+    private int inFlightSubmissionCount = 0;
+    // sequence number of the last submission, and of the last submission whose result was displayed automatically
+    private int lastSubmissionSequence = 0;
+    private int lastCompletedSubmissionSequence = 0;
+    // sequence number of the displayed result, either completed or selected in the history
+    private int lastDisplayedSequence = 0;
+
+    private final HistoryListView historyListView = new HistoryListView(PREFERRED_WIDTH, HISTORY_HEIGHT);
 
     private static final Color PANE_BORDER_COLOR = new Color(0.898, 0.902, 0.9216, 1);
     private static final BorderWidths PANE_BORDER_WIDTHS = new BorderWidths(1, 0, 1, 0);
@@ -86,7 +122,7 @@ public class BackGridPane extends GridPane {
         setBackground(BACKGROUND);
         setPadding(new Insets(PREFERRED_MARGIN, 0, PREFERRED_MARGIN, 0));
 
-        // 8 * 2 layout
+        // 10 * 2 layout
         setVgap(8);
         setHgap(2);
 
@@ -129,6 +165,29 @@ public class BackGridPane extends GridPane {
 
         add(CONFIDENCE_PROGRESS_BAR, 0, 7, 2, 1);
 
+        // add "History" label text
+        var historyText = UIUtils.getTextLabel("History");
+        UIUtils.setDefaultNodeMargin(historyText, PREFERRED_MARGIN, 0);
+        add(historyText, 0, 8);
+
+        // search the stored results when Enter is pressed, an empty query shows this session again
+        HISTORY_SEARCH_TEXT_FIELD.setOnAction(event -> searchHandler(HISTORY_SEARCH_TEXT_FIELD.getText()));
+        // Space and Enter keys typed in the field are not shortcuts of this panel
+        HISTORY_SEARCH_TEXT_FIELD.setOnKeyReleased(KeyEvent::consume);
+        UIUtils.setDefaultNodeMargin(HISTORY_SEARCH_TEXT_FIELD, 0, PREFERRED_MARGIN);
+        add(HISTORY_SEARCH_TEXT_FIELD, 1, 8);
+
+        // display the results of the selected entry
+        historyListView.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue != null && newValue.getFormattedResults() != null && newValue.getSequence() != lastDisplayedSequence) {
+                lastDisplayedSequence = newValue.getSequence();
+                clearDisplayedResults();
+                responseHandler(newValue);
+            }
+        });
+        UIUtils.setDefaultNodeMargin(historyListView, PREFERRED_MARGIN, PREFERRED_MARGIN);
+        add(historyListView, 0, 9, 2, 1);
+
         setOnKeyReleased(event -> {
             // Space key for displaying image in the clipboard
             if (event.getCode() == KeyCode.SPACE) {
@@ -149,6 +208,9 @@ public class BackGridPane extends GridPane {
         // display clipboard image when the app starts
         displayClipboardImage();
 
+        // submit new clipboard images automatically if this option is enabled in the preferences panel
+        clipboardWatcher.start();
+
     }
 
     /**
@@ -163,6 +225,11 @@ public class BackGridPane extends GridPane {
         GridPane.setHalignment(WAITING_TEXT_LABEL, HPos.RIGHT);
         UIUtils.setDefaultNodeMargin(WAITING_TEXT_LABEL, 0, PREFERRED_MARGIN);
 
+        // history search text field
+        HISTORY_SEARCH_TEXT_FIELD.setPromptText("Search LaTeX");
+        HISTORY_SEARCH_TEXT_FIELD.setFont(Font.font(12));
+        HISTORY_SEARCH_TEXT_FIELD.setFocusTraversable(false);
+
         // submit button
         SUBMIT_BUTTON.setVisible(false);
         SUBMIT_BUTTON.setFont(Font.font(12));
@@ -229,9 +296,10 @@ public class BackGridPane extends GridPane {
         // put empty string into the clipboard to avoid displaying the same error image again
         UIUtils.putStringIntoClipboard("");
 
-        // set empty image
+        // set empty image and drop the pending render
         CLIPBOARD_IMAGE_VIEW.setImage(null);
         RENDERED_IMAGE_VIEW.setImage(null);
+        lastRenderSequence++;
 
         // clear result TextFields
         for (PressCopyTextField pressCopyTextField : resultTextFiledList) {
@@ -270,27 +338,25 @@ public class BackGridPane extends GridPane {
 
     /**
      * Response handler.
+     *
+     * @param entry completed history entry.
      */
-    private void responseHandler(Response response) {
+    private void responseHandler(HistoryEntry entry) {
+
+        var response = entry.getResponse();
 
         // if response received
         if (response != null) {
 
-            // update usage count
-            PreferenceHelper.updateUsageCount();
-
             // error occurred
             if (response.getError() != null) {
                 errorHandler(response);
                 return;
             }
 
-            var result = response.getText();
-            var resultList = new String[]{
-                    result,
-                    IOUtils.secondResultFormatter(result),
-                    IOUtils.thirdResultFormatter(result),
-            };
+            // original, second and third results formatted once when the response is received
+            var resultList = entry.getFormattedResults();
+            var result = resultList[0];
 
             // put default result into the system clipboard
             UIUtils.putStringIntoClipboard(result);
@@ -299,6 +365,7 @@ public class BackGridPane extends GridPane {
 
             List<CopyResultButton> buttonList = new LinkedList<>();
 
+            // buttons follow the data of the displayed response, which could be stored with another profile
             var mathML = response.getMathML();
             if (!"".equals(mathML)) {
                 COPY_MATH_ML_BUTTON.setResult(mathML);
@@ -313,16 +380,23 @@ public class BackGridPane extends GridPane {
 
             FRONT_GRID_PANE.setCopyResultButtonColumnIndex(buttonList);
 
-            if (IOUtils.isTextAllWrapped(result)) {
+            // render on the render thread, ignore the image if a newer response is received meanwhile
+            var renderSequence = ++lastRenderSequence;
+            RENDERED_IMAGE_VIEW.setImage(null);
 
-                var renderResult = JLaTeXMathRenderingHelper.render(result);
+            if (IOUtils.isTextAllWrapped(result)) {
 
-                if (renderResult != null) {
-                    // set rendered equation to renderedImageView
-                    RENDERED_IMAGE_VIEW.setImage(renderResult);
-                } else {
-                    RENDERED_IMAGE_VIEW.setImage(UIUtils.RENDER_ERROR_IMAGE);
-                }
+                JLaTeXMathRenderingHelper.renderAsync(result).thenAcceptAsync(renderResult -> {
+                    if (renderSequence != lastRenderSequence) {
+                        return;
+                    }
+                    if (renderResult != null) {
+                        // set rendered equation to renderedImageView
+                        RENDERED_IMAGE_VIEW.setImage(renderResult);
+                    } else {
+                        RENDERED_IMAGE_VIEW.setImage(UIUtils.RENDER_ERROR_IMAGE);
+                    }
+                }, Platform::runLater);
 
             } else {
 
@@ -370,62 +444,186 @@ public class BackGridPane extends GridPane {
         // an Image has been registered on the clipboard
         if (clipboard.hasImage()) {
             // update the ImageView
+            var startNanos = System.nanoTime();
             CLIPBOARD_IMAGE_VIEW.setImage(clipboard.getImage());
+            Metrics.recordSince("clipboard", startNanos);
         }
     }
 
+    /**
+     * Display and submit a new image found by the clipboard watcher.
+     *
+     * @param image new clipboard image.
+     */
+    private void clipboardImageHandler(Image image) {
+        CLIPBOARD_IMAGE_VIEW.setImage(image);
+        submitClipboardImage();
+    }
+
     /**
      * OCR request handler.
      */
     private void requestHandler() {
 
-        // prevent multiple OCR requests from being sent in a short time
-        if (Instant.now().getEpochSecond() - lastRequestCompletionTimestamp < 1) {
-            lastRequestCompletionTimestamp = Instant.now().getEpochSecond();
+        displayClipboardImage();
+
+        if (CLIPBOARD_IMAGE_VIEW.getImage() != null) {
+
+            submitClipboardImage();
+
+        } else {
+
+            // no image in the system clipboard
+            UIUtils.displayError(IOUtils.NO_IMAGE_FOUND_IN_THE_CLIPBOARD_ERROR);
+
+        }
+
+    }
+
+    /**
+     * Queue the displayed clipboard image.
+     */
+    private void submitClipboardImage() {
+
+        if (submissionQueue.size() >= MAX_QUEUED_SUBMISSIONS) {
+            UIUtils.displayError(IOUtils.TOO_MANY_PENDING_SUBMISSIONS_ERROR);
             return;
         }
 
-        displayClipboardImage();
+        var entry = new HistoryEntry(++lastSubmissionSequence, CLIPBOARD_IMAGE_VIEW.getImage());
+        historyListView.addEntry(entry);
+        submissionQueue.add(entry);
 
-        if (CLIPBOARD_IMAGE_VIEW.getImage() != null) {
+        dispatchSubmissions();
 
-            for (PressCopyTextField pressCopyTextField : resultTextFiledList) {
-                pressCopyTextField.setFormattedText("");
-                pressCopyTextField.setDisable(false);
-            }
+        // show waiting label
+        updateWaitingLabel();
 
-            RENDERED_IMAGE_VIEW.setImage(null);
+    }
 
-            // clear last location
-            COPIED_BUTTON.setVisible(false);
-            COPY_TSV_BUTTON.setVisible(false);
-            COPY_MATH_ML_BUTTON.setVisible(false);
+    /**
+     * @param throwable exception of the recognition, could be wrapped in a CompletionException.
+     * @return error response with the message like "java.net.http.HttpTimeoutException: request timed out".
+     */
+    private static Response getErrorResponse(Throwable throwable) {
 
-            // show waiting label
-            WAITING_TEXT_LABEL.setVisible(true);
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
 
+        return new Response(throwable.toString());
+
+    }
+
+    /**
+     * Show the waiting label while any submission is queued or being recognised.
+     */
+    private void updateWaitingLabel() {
+        WAITING_TEXT_LABEL.setVisible(inFlightSubmissionCount > 0 || !submissionQueue.isEmpty());
+    }
+
+    /**
+     * Send the queued entries while there are free slots.
+     */
+    private void dispatchSubmissions() {
+
+        while (inFlightSubmissionCount < MAX_CONCURRENT_SUBMISSIONS && !submissionQueue.isEmpty()) {
+
+            var entry = submissionQueue.poll();
+            var startNanos = System.nanoTime();
+            inFlightSubmissionCount++;
+
+            // requests are queued by IO.RequestLimiter
+            // hop to the JavaFX application thread only once the request completes, normally or not
+            RECOGNITION.recogniseAsync(entry.getImage()).whenCompleteAsync((response, throwable) -> {
+
+                try {
+
+                    // a failed request is displayed as an error response
+                    if (throwable != null) {
+                        response = getErrorResponse(throwable);
+                    }
+
+                    // the full-resolution image is released here
+                    entry.complete(response);
+                    historyListView.updateEntry(entry);
+
+                    // do not replace the results of a newer submission, a history selection does not count
+                    if (entry.getSequence() > lastCompletedSubmissionSequence) {
+                        lastCompletedSubmissionSequence = entry.getSequence();
+                        lastDisplayedSequence = entry.getSequence();
+                        clearDisplayedResults();
+                        responseHandler(entry);
+                        historyListView.getSelectionModel().select(entry);
+                        Metrics.recordSince("round_trip", startNanos);
+                    }
+
+                } finally {
+
+                    // release the slot
+                    inFlightSubmissionCount--;
+
+                    dispatchSubmissions();
+
+                    // hide waiting label if no more request is pending
+                    updateWaitingLabel();
 
-            Task<Response> task = new Task<>() {
-                @Override
-                protected Response call() {
-                    return IOUtils.concurrentCall(RECOGNITION, CLIPBOARD_IMAGE_VIEW.getImage());
                 }
-            };
-            task.setOnSucceeded(event -> {
-                responseHandler(task.getValue());
-                // hide waiting label
-                WAITING_TEXT_LABEL.setVisible(false);
-            });
-            new Thread(task).start();
 
-        } else {
+            }, Platform::runLater);
 
-            // no image in the system clipboard
-            UIUtils.displayError(IOUtils.NO_IMAGE_FOUND_IN_THE_CLIPBOARD_ERROR);
+        }
+
+    }
 
+    /**
+     * Search the stored results and display them in the history.
+     *
+     * @param query LaTeX tokens to be found.
+     */
+    private void searchHandler(String query) {
+
+        if (query.isBlank()) {
+            historyListView.showSessionEntries();
+            return;
+        }
+
+        HistoryStore.search(query, MAX_SEARCH_RESULTS).thenAcceptAsync(storedEntries -> {
+
+            // skip the results of an outdated query
+            if (!query.equals(HISTORY_SEARCH_TEXT_FIELD.getText())) {
+                return;
+            }
+
+            var entries = new ArrayList<HistoryEntry>(storedEntries.size());
+            for (HistoryStore.Entry storedEntry : storedEntries) {
+                var thumbnail = new Image(new ByteArrayInputStream(storedEntry.getThumbnail()));
+                entries.add(new HistoryEntry(-storedEntry.getId() - 1, thumbnail, storedEntry.getResponse()));
+            }
+
+            historyListView.showSearchResults(entries);
+
+        }, Platform::runLater);
+
+    }
+
+    /**
+     * Clear the results displayed before showing new ones.
+     */
+    private void clearDisplayedResults() {
+
+        for (PressCopyTextField pressCopyTextField : resultTextFiledList) {
+            pressCopyTextField.setFormattedText("");
+            pressCopyTextField.setDisable(false);
         }
 
-        lastRequestCompletionTimestamp = Instant.now().getEpochSecond();
+        RENDERED_IMAGE_VIEW.setImage(null);
+        lastRenderSequence++;
+
+        // clear last location
+        COPIED_BUTTON.setVisible(false);
+        COPY_TSV_BUTTON.setVisible(false);
+        COPY_MATH_ML_BUTTON.setVisible(false);
 
     }
 
@@ -0,0 +1,185 @@
+package ui;
+
+import io.PreferenceHelper;
+import javafx.animation.PauseTransition;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.DataFormat;
+import javafx.util.Duration;
+
+import java.util.function.Consumer;
+
+
+/**
+ * UI.ClipboardWatcher.java
+ * Polls the system clipboard on the JavaFX application thread and hands over each new image once it stops changing.
+ * Each poll only probes the content types, the image is decoded and hashed when they change, while a new image settles
+ * or at a recheck interval, since the same content types could hold another image.
+ * The polling and recheck intervals are stretched so that the time spent stays within the CPU budget set in
+ * IO.PreferenceHelper.
+ */
+public class ClipboardWatcher {
+
+    private static final long MIN_INTERVAL_MILLIS = 200;
+    // minimum interval between decoding an image whose content types are unchanged
+    private static final long MIN_RECHECK_MILLIS = 2000;
+    // interval while the watcher is disabled in the preferences
+    private static final long IDLE_INTERVAL_MILLIS = 1000;
+    // a new image is submitted once its hash is unchanged for this long
+    private static final long DEBOUNCE_MILLIS = 300;
+
+    // maximum number of pixel rows hashed per image
+    private static final int MAX_HASHED_ROWS = 256;
+
+    // hash of no image
+    private static final long NO_IMAGE_HASH = 0;
+
+    private final Clipboard clipboard = Clipboard.getSystemClipboard();
+    private final PauseTransition pauseTransition = new PauseTransition();
+    private final Consumer<Image> imageConsumer;
+
+    // hash of the last image handed over or present when the watcher is enabled
+    private long lastHash = NO_IMAGE_HASH;
+    // hash of the new image waiting for the debounce, and the time it was last seen changed
+    private long pendingHash = NO_IMAGE_HASH;
+    private long pendingSinceMillis = 0;
+
+    // hash of the content types at the last poll, and the earliest time an unchanged image is decoded again
+    private int lastProbeHash = 0;
+    private long nextRecheckMillis = 0;
+
+    private boolean isEnabled = false;
+    private int[] rowBuffer = new int[0];
+
+    /**
+     * @param imageConsumer called on the JavaFX application thread with each new clipboard image.
+     */
+    public ClipboardWatcher(Consumer<Image> imageConsumer) {
+        this.imageConsumer = imageConsumer;
+        pauseTransition.setOnFinished(event -> poll());
+    }
+
+    /**
+     * Start polling, the watcher stays idle while disabled in the preferences.
+     */
+    public void start() {
+        schedule(0);
+    }
+
+    /**
+     * @param delayMillis delay before the next poll.
+     */
+    private void schedule(long delayMillis) {
+        pauseTransition.setDuration(Duration.millis(delayMillis));
+        pauseTransition.playFromStart();
+    }
+
+    /**
+     * Check the clipboard and schedule the next poll within the CPU budget.
+     */
+    private void poll() {
+
+        if (!PreferenceHelper.getClipboardWatcherOption()) {
+            isEnabled = false;
+            schedule(IDLE_INTERVAL_MILLIS);
+            return;
+        }
+
+        var startNanos = System.nanoTime();
+        var budgetPercent = Math.max(PreferenceHelper.getClipboardWatcherCPUBudget(), 1);
+
+        // listing the content types does not decode the image
+        var contentTypes = clipboard.getContentTypes();
+        var probeHash = contentTypes.hashCode();
+        var isProbeChanged = probeHash != lastProbeHash;
+        lastProbeHash = probeHash;
+
+        Image image = null;
+        long hash;
+
+        if (!contentTypes.contains(DataFormat.IMAGE)) {
+            hash = NO_IMAGE_HASH;
+        } else if (isProbeChanged || !isEnabled || pendingHash != lastHash
+                || System.currentTimeMillis() >= nextRecheckMillis) {
+
+            var decodeStartNanos = System.nanoTime();
+            image = clipboard.getImage();
+            hash = image == null ? NO_IMAGE_HASH : getHash(image);
+
+            // decoding an unchanged image again is paid from the same budget
+            var decodeCostMillis = (System.nanoTime() - decodeStartNanos) / 1e6;
+            nextRecheckMillis = System.currentTimeMillis() +
+                    Math.max((long) (decodeCostMillis * 100 / budgetPercent), MIN_RECHECK_MILLIS);
+
+        } else {
+            // assume the same image until the recheck
+            hash = pendingHash;
+        }
+
+        if (!isEnabled) {
+            // do not submit the image already in the clipboard when enabled
+            isEnabled = true;
+            lastHash = hash;
+            pendingHash = hash;
+        } else if (hash != pendingHash) {
+            // changed since the last poll, wait until it settles
+            pendingHash = hash;
+            pendingSinceMillis = System.currentTimeMillis();
+        } else if (hash != lastHash && System.currentTimeMillis() - pendingSinceMillis >= DEBOUNCE_MILLIS) {
+            lastHash = hash;
+            if (image != null) {
+                imageConsumer.accept(image);
+            }
+        }
+
+        // spend at most the budget percentage of the interval on polling
+        var costMillis = (System.nanoTime() - startNanos) / 1e6;
+        var intervalMillis = (long) (costMillis * 100 / budgetPercent);
+
+        if (pendingHash != lastHash) {
+            // check again soon to end the debounce
+            intervalMillis = Math.max(intervalMillis, DEBOUNCE_MILLIS);
+        }
+
+        // not capped, an expensive poll must be followed by a long enough pause to stay within the budget
+        schedule(Math.max(intervalMillis, MIN_INTERVAL_MILLIS));
+
+    }
+
+    /**
+     * Hash the size and evenly spaced full rows of the image, without keeping or comparing whole images.
+     *
+     * @param image clipboard image.
+     * @return 64-bit hash, never NO_IMAGE_HASH.
+     */
+    private long getHash(Image image) {
+
+        var pixelReader = image.getPixelReader();
+        var width = (int) image.getWidth();
+        var height = (int) image.getHeight();
+
+        var hash = 31L * width + height;
+
+        if (pixelReader == null) {
+            return hash == NO_IMAGE_HASH ? 1 : hash;
+        }
+
+        if (rowBuffer.length < width) {
+            rowBuffer = new int[width];
+        }
+
+        var rowStride = Math.max(height / MAX_HASHED_ROWS, 1);
+
+        for (var y = 0; y < height; y += rowStride) {
+            pixelReader.getPixels(0, y, width, 1, PixelFormat.getIntArgbInstance(), rowBuffer, 0, width);
+            for (var x = 0; x < width; x++) {
+                hash = hash * 1099511628211L + rowBuffer[x];
+            }
+        }
+
+        return hash == NO_IMAGE_HASH ? 1 : hash;
+
+    }
+
+}
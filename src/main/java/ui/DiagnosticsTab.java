@@ -0,0 +1,119 @@
+package ui;
+
+import io.Metrics;
+import io.PreferenceHelper;
+import javafx.geometry.Insets;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.GridPane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+
+/**
+ * UI.DiagnosticsTab.java
+ * Used to display the latency of each stage of the OCR round trip and the client gauges from IO.Metrics.
+ */
+public final class DiagnosticsTab extends Tab {
+
+    private static final int PANEL_MARGIN = 20;
+    private static final int MINIMUM_MARGIN = 5;
+
+    private final TextArea metricsTextArea = new TextArea();
+
+    public DiagnosticsTab() {
+
+        // tab header
+        setText(" Diagnostics ");
+        // non-closable
+        setClosable(false);
+
+        // 3 * 3 layout
+        var gridPane = new GridPane();
+        gridPane.setHgap(2);
+        gridPane.setVgap(2);
+        gridPane.setPadding(new Insets(PANEL_MARGIN));
+
+        // monospaced table of the metrics
+        metricsTextArea.setEditable(false);
+        metricsTextArea.setFont(Font.font("Monospaced", 11));
+        metricsTextArea.setPrefSize(520, 300);
+        GridPane.setMargin(metricsTextArea, new Insets(MINIMUM_MARGIN));
+        gridPane.add(metricsTextArea, 0, 0, 3, 1);
+
+        var refreshButton = new Button("Refresh");
+        refreshButton.setOnMouseClicked(event -> updateMetricsText());
+        GridPane.setMargin(refreshButton, new Insets(MINIMUM_MARGIN));
+        gridPane.add(refreshButton, 0, 1);
+
+        // load initial metrics server port
+        var metricsServerPort = PreferenceHelper.getMetricsServerPort();
+
+        var portLabel = new Label("Export Port (0 to disable):");
+        GridPane.setMargin(portLabel, new Insets(MINIMUM_MARGIN));
+        gridPane.add(portLabel, 0, 2);
+
+        var portTextField = new TextField(Integer.toString(metricsServerPort));
+        portTextField.setMaxWidth(80);
+        GridPane.setMargin(portTextField, new Insets(MINIMUM_MARGIN, MINIMUM_MARGIN, MINIMUM_MARGIN, 0));
+        gridPane.add(portTextField, 1, 2);
+
+        // add "restart to take effect" warning label
+        var warningLabel = new Label("restart to take effect");
+        warningLabel.setVisible(false);
+        warningLabel.setTextFill(Color.RED);
+        GridPane.setMargin(warningLabel, new Insets(MINIMUM_MARGIN));
+        gridPane.add(warningLabel, 2, 2);
+
+        // save to Java Preferences API when port number is changed
+        portTextField.textProperty().addListener((observable, oldValue, newValue) -> {
+            if (!newValue.matches("\\d{0,5}")) {
+                portTextField.setText(oldValue);
+                return;
+            }
+            var port = newValue.isEmpty() ? 0 : Integer.parseInt(newValue);
+            PreferenceHelper.setMetricsServerPort(port);
+            // show "restart to take effect" if current port is different from the initial one
+            warningLabel.setVisible(port != metricsServerPort);
+        });
+
+        // refresh when the tab is shown
+        setOnSelectionChanged(event -> {
+            if (isSelected()) {
+                updateMetricsText();
+            }
+        });
+
+        setContent(gridPane);
+
+    }
+
+    /**
+     * Update the table with the current metrics.
+     */
+    private void updateMetricsText() {
+
+        var builder = new StringBuilder();
+        builder.append(String.format("%-18s %7s %9s %9s %9s %9s%n", "Stage (ms)", "Count", "Mean", "p50", "p95", "Max"));
+
+        for (var entry : Metrics.getHistogramMap().entrySet()) {
+            var histogram = entry.getValue();
+            builder.append(String.format("%-18s %7d %9.2f %9.2f %9.2f %9.2f%n", entry.getKey(), histogram.getCount(),
+                    histogram.getMeanMillis(), histogram.getPercentileMillis(0.5), histogram.getPercentileMillis(0.95),
+                    histogram.getMaxMillis()));
+        }
+
+        builder.append(System.lineSeparator());
+
+        for (var entry : Metrics.getGaugeMap().entrySet()) {
+            builder.append(String.format("%-30s %s%n", entry.getKey(), entry.getValue()));
+        }
+
+        metricsTextArea.setText(builder.toString());
+
+    }
+
+}
@@ -1,6 +1,7 @@
 package ui;
 
 import io.IOUtils;
+import io.OCRProfile;
 import io.PreferenceHelper;
 import javafx.geometry.Insets;
 import javafx.scene.control.Label;
@@ -16,7 +17,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * UI.FormattingTab.java
- * Used to display and edit second and third formatting options in the preferences panel.
+ * Used to display and edit second and third formatting options, and the OCR option profile, in the preferences panel.
  */
 public final class FormattingTab extends Tab {
 
@@ -32,7 +33,7 @@ public final class FormattingTab extends Tab {
         // non-closable
         setClosable(false);
 
-        // 4 * 4 layout
+        // 4 * 6 layout
         var gridPane = new GridPane();
         gridPane.setHgap(4);
         gridPane.setVgap(4);
@@ -102,6 +103,31 @@ public final class FormattingTab extends Tab {
             gridPane.add(radioButton, i, 3);
         }
 
+        // data requested with the text, takes effect from the next request
+        var profileLabel = new Label("Requested Results");
+        profileLabel.setFont(Font.font(14));
+        GridPane.setMargin(profileLabel, new Insets(3 * MINIMUM_MARGIN, MINIMUM_MARGIN, MINIMUM_MARGIN, 0));
+        gridPane.add(profileLabel, 0, 4, 4, 1);
+
+        final var profileOptions = new ToggleGroup();
+        var ocrProfile = PreferenceHelper.getOCRProfile();
+
+        for (var profile : OCRProfile.values()) {
+            var radioButton = new RadioButton(profile.getDisplayName());
+            radioButton.setToggleGroup(profileOptions);
+            radioButton.setSelected(profile == ocrProfile);
+            radioButton.setUserData(profile);
+            GridPane.setMargin(radioButton, new Insets(0, MINIMUM_MARGIN, MINIMUM_MARGIN, MINIMUM_MARGIN));
+            gridPane.add(radioButton, profile.ordinal(), 5);
+        }
+
+        // toggle changed listener
+        profileOptions.selectedToggleProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue != null) {
+                PreferenceHelper.setOCRProfile((OCRProfile) newValue.getUserData());
+            }
+        });
+
         setContent(gridPane);
 
     }
@@ -4,6 +4,7 @@ import io.PreferenceHelper;
 import javafx.geometry.Insets;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.Spinner;
 import javafx.scene.control.Tab;
 import javafx.scene.layout.GridPane;
 import javafx.scene.paint.Color;
@@ -17,6 +18,8 @@ public final class GeneralTab extends Tab {
     private static final int PANEL_MARGIN = 20;
     private static final int MINIMUM_MARGIN = 20;
 
+    private static final int MAX_CPU_BUDGET_PERCENT = 25;
+
     private static final Label usageLabel = new Label();
 
     public GeneralTab() {
@@ -29,7 +32,7 @@ public final class GeneralTab extends Tab {
         // load initial submit button enable option
         var submitButtonEnableOption = PreferenceHelper.getSubmitButtonEnableOption();
 
-        // 2 * 2 layout
+        // 2 * 5 layout
         var gridPane = new GridPane();
         gridPane.setHgap(2);
         gridPane.setVgap(2);
@@ -58,6 +61,39 @@ public final class GeneralTab extends Tab {
         GridPane.setMargin(submitButtonEnableOptionCheckBox, new Insets(MINIMUM_MARGIN));
         gridPane.add(submitButtonEnableOptionCheckBox, 0, 1);
 
+        // submit new clipboard images automatically, takes effect immediately
+        var clipboardWatcherOptionCheckBox = new CheckBox("Auto Submit Clipboard Images");
+        clipboardWatcherOptionCheckBox.setSelected(PreferenceHelper.getClipboardWatcherOption());
+        clipboardWatcherOptionCheckBox.selectedProperty().addListener((observable, oldValue, newValue) ->
+                PreferenceHelper.setClipboardWatcherOption(newValue));
+
+        GridPane.setMargin(clipboardWatcherOptionCheckBox, new Insets(0, MINIMUM_MARGIN, MINIMUM_MARGIN, MINIMUM_MARGIN));
+        gridPane.add(clipboardWatcherOptionCheckBox, 0, 2, 2, 1);
+
+        // percentage of a CPU core the clipboard polling may use
+        var cpuBudgetLabel = new Label("Auto Submit CPU Budget (%):");
+        GridPane.setMargin(cpuBudgetLabel, new Insets(0, MINIMUM_MARGIN, MINIMUM_MARGIN, MINIMUM_MARGIN));
+        gridPane.add(cpuBudgetLabel, 0, 3);
+
+        var cpuBudgetSpinner = new Spinner<Integer>(1, MAX_CPU_BUDGET_PERCENT,
+                Math.min(Math.max(PreferenceHelper.getClipboardWatcherCPUBudget(), 1), MAX_CPU_BUDGET_PERCENT));
+        cpuBudgetSpinner.setMaxWidth(80);
+        cpuBudgetSpinner.disableProperty().bind(clipboardWatcherOptionCheckBox.selectedProperty().not());
+        cpuBudgetSpinner.valueProperty().addListener((observable, oldValue, newValue) ->
+                PreferenceHelper.setClipboardWatcherCPUBudget(newValue));
+
+        GridPane.setMargin(cpuBudgetSpinner, new Insets(0, MINIMUM_MARGIN, MINIMUM_MARGIN, 0));
+        gridPane.add(cpuBudgetSpinner, 1, 3);
+
+        // upload raw image bytes instead of Base64 in the JSON body, takes effect immediately
+        var multipartUploadOptionCheckBox = new CheckBox("Multipart Image Upload");
+        multipartUploadOptionCheckBox.setSelected(PreferenceHelper.getMultipartUploadOption());
+        multipartUploadOptionCheckBox.selectedProperty().addListener((observable, oldValue, newValue) ->
+                PreferenceHelper.setMultipartUploadOption(newValue));
+
+        GridPane.setMargin(multipartUploadOptionCheckBox, new Insets(0, MINIMUM_MARGIN, MINIMUM_MARGIN, MINIMUM_MARGIN));
+        gridPane.add(multipartUploadOptionCheckBox, 0, 4, 2, 1);
+
         setContent(gridPane);
 
     }
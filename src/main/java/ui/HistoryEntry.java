@@ -0,0 +1,142 @@
+package ui;
+
+import io.IOUtils;
+import io.Metrics;
+import io.Response;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+
+
+/**
+ * UI.HistoryEntry.java
+ * A submitted image with its thumbnail and its results, displayed by UI.HistoryListView.
+ * The full-resolution image is only kept until the result is received.
+ */
+public final class HistoryEntry {
+
+    private static final int THUMBNAIL_WIDTH = 96;
+    private static final int THUMBNAIL_HEIGHT = 32;
+
+    private final int sequence;
+    private final Image thumbnail;
+
+    private Image image;
+    private Response response;
+    private String[] formattedResults;
+
+    /**
+     * @param sequence submission order.
+     * @param image    image to be recognised.
+     */
+    HistoryEntry(int sequence, Image image) {
+        this.sequence = sequence;
+        this.image = image;
+        this.thumbnail = getThumbnail(image);
+    }
+
+    /**
+     * @param sequence  order of the entry, negative for entries loaded from the IO.HistoryStore.
+     * @param thumbnail stored thumbnail.
+     * @param response  stored result.
+     */
+    HistoryEntry(int sequence, Image thumbnail, Response response) {
+        this.sequence = sequence;
+        this.thumbnail = thumbnail;
+        complete(response);
+    }
+
+    /**
+     * Sample the image down to the thumbnail size with nearest-neighbour scaling.
+     *
+     * @param image full-resolution image.
+     * @return thumbnail fitting in THUMBNAIL_WIDTH * THUMBNAIL_HEIGHT, null if the image cannot be read.
+     */
+    private static Image getThumbnail(Image image) {
+
+        var pixelReader = image.getPixelReader();
+        if (pixelReader == null || image.getWidth() < 1 || image.getHeight() < 1) {
+            return null;
+        }
+
+        var scale = Math.min(1, Math.min(THUMBNAIL_WIDTH / image.getWidth(), THUMBNAIL_HEIGHT / image.getHeight()));
+        var width = Math.max((int) (image.getWidth() * scale), 1);
+        var height = Math.max((int) (image.getHeight() * scale), 1);
+
+        var thumbnail = new WritableImage(width, height);
+        var pixelWriter = thumbnail.getPixelWriter();
+
+        for (var y = 0; y < height; y++) {
+            var sourceY = (int) (y / scale);
+            for (var x = 0; x < width; x++) {
+                pixelWriter.setArgb(x, y, pixelReader.getArgb((int) (x / scale), sourceY));
+            }
+        }
+
+        return thumbnail;
+
+    }
+
+    /**
+     * Store the result and release the full-resolution image.
+     *
+     * @param response OCR request result, null if no response is received.
+     */
+    void complete(Response response) {
+
+        this.response = response;
+        image = null;
+
+        if (response != null && response.getError() == null) {
+            // original, second and third formatted results in a single pass
+            var result = response.getText() == null ? "" : response.getText();
+            var startNanos = System.nanoTime();
+            var results = IOUtils.resultsFormatter(result);
+            Metrics.recordSince("format", startNanos);
+            formattedResults = new String[]{result, results[0], results[1]};
+        }
+
+    }
+
+    /**
+     * @return submission order, negative for entries loaded from the IO.HistoryStore.
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return full-resolution image, null once the result is received.
+     */
+    public Image getImage() {
+        return image;
+    }
+
+    /**
+     * @return thumbnail of the image.
+     */
+    public Image getThumbnail() {
+        return thumbnail;
+    }
+
+    /**
+     * @return whether the result is not received yet.
+     */
+    public boolean isPending() {
+        return image != null;
+    }
+
+    /**
+     * @return OCR request result, null if pending or no response is received.
+     */
+    public Response getResponse() {
+        return response;
+    }
+
+    /**
+     * @return original, second and third formatted results, null if pending or failed.
+     */
+    public String[] getFormattedResults() {
+        return formattedResults;
+    }
+
+}
@@ -0,0 +1,135 @@
+package ui;
+
+import io.IOUtils;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.HBox;
+import javafx.scene.text.Font;
+
+import java.util.List;
+
+
+/**
+ * UI.HistoryListView.java
+ * Virtualised list of the submitted images, newest first, or of the results found in the IO.HistoryStore.
+ * Only the visible rows have a cell, and cells are reused while scrolling.
+ */
+public class HistoryListView extends ListView<HistoryEntry> {
+
+    private static final int MAX_ENTRIES = 100;
+    private static final int CELL_HEIGHT = 40;
+
+    // entries submitted in this session, the displayed items are replaced by search results
+    private final ObservableList<HistoryEntry> sessionItems = FXCollections.observableArrayList();
+
+    /**
+     * @param preferredWidth  preferred width.
+     * @param preferredHeight preferred height.
+     */
+    public HistoryListView(int preferredWidth, int preferredHeight) {
+        setPrefSize(preferredWidth, preferredHeight);
+        setFixedCellSize(CELL_HEIGHT);
+        setFocusTraversable(false);
+        setCellFactory(listView -> new HistoryCell());
+        setItems(sessionItems);
+    }
+
+    /**
+     * Add the entry on top and drop the oldest entries above the limit.
+     *
+     * @param entry new entry.
+     */
+    public void addEntry(HistoryEntry entry) {
+
+        sessionItems.add(0, entry);
+
+        if (sessionItems.size() > MAX_ENTRIES) {
+            sessionItems.remove(MAX_ENTRIES, sessionItems.size());
+        }
+
+        showSessionEntries();
+
+    }
+
+    /**
+     * Redraw the row of the entry if it is visible.
+     *
+     * @param entry updated entry.
+     */
+    public void updateEntry(HistoryEntry entry) {
+        var index = sessionItems.indexOf(entry);
+        if (index >= 0) {
+            sessionItems.set(index, entry);
+        }
+    }
+
+    /**
+     * Display the entries submitted in this session.
+     */
+    public void showSessionEntries() {
+        if (getItems() != sessionItems) {
+            setItems(sessionItems);
+        }
+    }
+
+    /**
+     * Display search results instead of the entries submitted in this session.
+     *
+     * @param entries entries found in the IO.HistoryStore.
+     */
+    public void showSearchResults(List<HistoryEntry> entries) {
+        setItems(FXCollections.observableArrayList(entries));
+    }
+
+    /**
+     * Row of a thumbnail and the status or the first line of the result.
+     */
+    private static final class HistoryCell extends ListCell<HistoryEntry> {
+
+        private final ImageView thumbnailView = new ImageView();
+        private final Label resultLabel = new Label();
+        private final HBox hBox = new HBox(8, thumbnailView, resultLabel);
+
+        private HistoryCell() {
+            hBox.setAlignment(Pos.CENTER_LEFT);
+            resultLabel.setFont(Font.font(12));
+        }
+
+        @Override
+        protected void updateItem(HistoryEntry entry, boolean empty) {
+
+            super.updateItem(entry, empty);
+
+            if (empty || entry == null) {
+                thumbnailView.setImage(null);
+                setGraphic(null);
+                return;
+            }
+
+            thumbnailView.setImage(entry.getThumbnail());
+
+            var response = entry.getResponse();
+            if (entry.isPending()) {
+                resultLabel.setText("Waiting...");
+            } else if (response == null) {
+                resultLabel.setText(IOUtils.UNEXPECTED_ERROR);
+            } else if (response.getError() != null) {
+                resultLabel.setText(response.getError());
+            } else {
+                var result = entry.getFormattedResults()[0];
+                var lineBreakIndex = result.indexOf('\n');
+                resultLabel.setText(lineBreakIndex < 0 ? result : result.substring(0, lineBreakIndex) + " ...");
+            }
+
+            setGraphic(hBox);
+
+        }
+
+    }
+
+}
@@ -0,0 +1,119 @@
+package ui;
+
+import io.PreferenceHelper;
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.scene.Node;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.Spinner;
+import javafx.scene.control.Tab;
+import javafx.scene.layout.GridPane;
+
+import java.util.function.IntConsumer;
+
+
+/**
+ * UI.ImageTab.java
+ * Used to display and edit image pre-processing and encoding options in the preferences panel.
+ * All options take effect from the next request.
+ */
+public final class ImageTab extends Tab {
+
+    private static final int PANEL_MARGIN = 20;
+    private static final int MINIMUM_MARGIN = 8;
+
+    private static final int MAX_SIDE_LENGTH = 8000;
+    private static final int SIDE_LENGTH_STEP = 200;
+
+    public ImageTab() {
+
+        // tab header
+        setText(" Image ");
+        // non-closable
+        setClosable(false);
+
+        // 2 * 7 layout
+        var gridPane = new GridPane();
+        gridPane.setHgap(2);
+        gridPane.setVgap(7);
+        gridPane.setPadding(new Insets(PANEL_MARGIN, PANEL_MARGIN + MINIMUM_MARGIN, PANEL_MARGIN, PANEL_MARGIN));
+
+        // crop the uniform borders around the content
+        var trimOptionCheckBox = new CheckBox("Trim Borders");
+        trimOptionCheckBox.setSelected(PreferenceHelper.getImageTrimOption());
+        trimOptionCheckBox.selectedProperty().addListener((observable, oldValue, newValue) ->
+                PreferenceHelper.setImageTrimOption(newValue));
+
+        GridPane.setMargin(trimOptionCheckBox, new Insets(MINIMUM_MARGIN));
+        gridPane.add(trimOptionCheckBox, 0, 0, 2, 1);
+
+        // downscale larger images, 0 for the original size
+        var maxSideLengthSpinner = new Spinner<Integer>(0, MAX_SIDE_LENGTH,
+                Math.min(Math.max(PreferenceHelper.getImageMaxSideLength(), 0), MAX_SIDE_LENGTH), SIDE_LENGTH_STEP);
+        addRow(gridPane, 1, "Max Side Length (0 = unlimited):", maxSideLengthSpinner);
+        maxSideLengthSpinner.valueProperty().addListener((observable, oldValue, newValue) ->
+                PreferenceHelper.setImageMaxSideLength(newValue));
+
+        var colorChoiceBox = newChoiceBox(PreferenceHelper.getImageColorOption(), PreferenceHelper::setImageColorOption,
+                "Original", "Grayscale", "16-Level Gray");
+        addRow(gridPane, 2, "Colors:", colorChoiceBox);
+
+        var codecChoiceBox = newChoiceBox(PreferenceHelper.getImageCodecOption(), PreferenceHelper::setImageCodecOption,
+                "Automatic", "PNG", "Palette PNG", "JPEG");
+        addRow(gridPane, 3, "Format:", codecChoiceBox);
+
+        var pngCompressionLevelSpinner = new Spinner<Integer>(0, 9,
+                Math.min(Math.max(PreferenceHelper.getPNGCompressionLevel(), 0), 9));
+        addRow(gridPane, 4, "PNG Compression Level:", pngCompressionLevelSpinner);
+        pngCompressionLevelSpinner.valueProperty().addListener((observable, oldValue, newValue) ->
+                PreferenceHelper.setPNGCompressionLevel(newValue));
+
+        var pngFilterChoiceBox = newChoiceBox(PreferenceHelper.getPNGFilterOption(), PreferenceHelper::setPNGFilterOption,
+                "Adaptive", "None", "Sub", "Up", "Paeth");
+        addRow(gridPane, 5, "PNG Filter:", pngFilterChoiceBox);
+
+        var jpegQualitySpinner = new Spinner<Integer>(1, 100,
+                Math.min(Math.max(PreferenceHelper.getJPEGQuality(), 1), 100), 5);
+        addRow(gridPane, 6, "JPEG Quality:", jpegQualitySpinner);
+        jpegQualitySpinner.valueProperty().addListener((observable, oldValue, newValue) ->
+                PreferenceHelper.setJPEGQuality(newValue));
+
+        setContent(gridPane);
+
+    }
+
+    /**
+     * @param option   index of the selected item, the first item if it is invalid.
+     * @param consumer called with the index of the newly selected item.
+     * @param items    items in the order of the options.
+     * @return choice box of the items.
+     */
+    private static ChoiceBox<String> newChoiceBox(int option, IntConsumer consumer, String... items) {
+
+        var choiceBox = new ChoiceBox<>(FXCollections.observableArrayList(items));
+        choiceBox.getSelectionModel().select(option >= 0 && option < items.length ? option : 0);
+
+        choiceBox.getSelectionModel().selectedIndexProperty().addListener((observable, oldValue, newValue) ->
+                consumer.accept(newValue.intValue()));
+
+        return choiceBox;
+
+    }
+
+    /**
+     * Add a label and its control in the given row.
+     */
+    private static void addRow(GridPane gridPane, int row, String text, Node control) {
+
+        var label = new Label(text);
+        GridPane.setMargin(label, new Insets(MINIMUM_MARGIN));
+        gridPane.add(label, 0, row);
+
+        GridPane.setMargin(control, new Insets(MINIMUM_MARGIN, MINIMUM_MARGIN, MINIMUM_MARGIN, 0));
+        gridPane.add(control, 1, row);
+
+    }
+
+}
@@ -24,7 +24,8 @@ package ui;
   Modified by Blaise Wang on 29 March 2020
  */
 
-import javafx.embed.swing.SwingFXUtils;
+import io.FXImageBridge;
+import io.Metrics;
 import javafx.scene.image.Image;
 import org.scilab.forge.jlatexmath.ParseException;
 import org.scilab.forge.jlatexmath.TeXConstants;
@@ -34,32 +35,127 @@ import javax.swing.JLabel;
 import java.awt.Color;
 import java.awt.Insets;
 import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 /**
  * UI.JLaTeXMathRenderingHelper.java
  * Utility class used to render LaTeX formulas.
+ * Rendering runs on a background render thread, with LRU caches of parsed formulas and rendered images.
  */
 public class JLaTeXMathRenderingHelper {
 
+    private static final int DEFAULT_STYLE = TeXConstants.STYLE_DISPLAY;
+    private static final float DEFAULT_SIZE = 20;
+
+    private static final int MAX_FORMULA_CACHE_SIZE = 128;
+    private static final int MAX_IMAGE_CACHE_SIZE = 64;
+
+    // parsed formulas keyed by the LaTeX source, empty if the source cannot be parsed
+    private static final Map<String, Optional<TeXFormula>> FORMULA_CACHE = createLRUCache(MAX_FORMULA_CACHE_SIZE);
+    // rendered images keyed by the LaTeX source, style and size
+    private static final Map<String, Image> IMAGE_CACHE = createLRUCache(MAX_IMAGE_CACHE_SIZE);
+
+    // single render thread, as JLaTeXMath is not documented to be thread-safe
+    private static final ExecutorService RENDER_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "latex-renderer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
-     * Original source: https://github.com/jeffheaton/jlatexmath-example/blob/master/src/com/jeffheaton/latex/LatexExample.java
+     * @param maxSize maximum number of entries.
+     * @param <V>     value type.
+     * @return a synchronized access-ordered map evicting the eldest entry.
+     */
+    private static <V> Map<String, V> createLRUCache(int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    /**
+     * Render the formula on the render thread with the default style and size.
      *
      * @param latexSource text to be rendered.
-     * @return rendered formula image.
+     * @return a future of the rendered formula image, completed with null if the text cannot be parsed.
+     */
+    public static CompletableFuture<Image> renderAsync(String latexSource) {
+        return CompletableFuture.supplyAsync(() -> render(latexSource), RENDER_EXECUTOR);
+    }
+
+    /**
+     * @param latexSource text to be rendered.
+     * @return rendered formula image with the default style and size.
      */
     public static Image render(String latexSource) {
+        return render(latexSource, DEFAULT_STYLE, DEFAULT_SIZE);
+    }
 
-        TeXFormula teXFormula;
+    /**
+     * @param latexSource text to be rendered.
+     * @param style       one of the TeXConstants styles.
+     * @param size        font size of the formula.
+     * @return rendered formula image, null if the text cannot be parsed.
+     */
+    public static Image render(String latexSource, int style, float size) {
+
+        var startNanos = System.nanoTime();
+
+        var key = style + ":" + size + ":" + latexSource;
+        var image = IMAGE_CACHE.get(key);
+
+        if (image == null) {
+            // parsed formula is reused for different styles and sizes
+            var teXFormula = FORMULA_CACHE.computeIfAbsent(latexSource, JLaTeXMathRenderingHelper::parse);
+            if (teXFormula.isEmpty()) {
+                Metrics.recordSince("render", startNanos);
+                return null;
+            }
+            image = paint(teXFormula.get(), style, size);
+            IMAGE_CACHE.put(key, image);
+        }
+
+        Metrics.recordSince("render", startNanos);
+
+        return image;
+
+    }
+
+    /**
+     * @param latexSource text to be parsed.
+     * @return parsed formula, empty if the text cannot be parsed.
+     */
+    private static Optional<TeXFormula> parse(String latexSource) {
         try {
             // create a formula
-            teXFormula = new TeXFormula(latexSource);
+            return Optional.of(new TeXFormula(latexSource));
         } catch (ParseException ignored) {
-            return null;
+            return Optional.empty();
         }
+    }
+
+    /**
+     * Original source: https://github.com/jeffheaton/jlatexmath-example/blob/master/src/com/jeffheaton/latex/LatexExample.java
+     *
+     * @param teXFormula formula to be painted.
+     * @param style      one of the TeXConstants styles.
+     * @param size       font size of the formula.
+     * @return rendered formula image.
+     */
+    private static Image paint(TeXFormula teXFormula, int style, float size) {
 
         // render the formula to an icon of the same size as the formula.
-        var icon = teXFormula.createTeXIcon(TeXConstants.STYLE_DISPLAY, 20);
+        var icon = teXFormula.createTeXIcon(style, size);
 
         // insert a border
         icon.setInsets(new Insets(5, 5, 5, 5));
@@ -72,8 +168,10 @@ public class JLaTeXMathRenderingHelper {
         var jLabel = new JLabel();
         jLabel.setForeground(new Color(0, 0, 0));
         icon.paintIcon(jLabel, graphics2D, 0, 0);
+        graphics2D.dispose();
 
-        return SwingFXUtils.toFXImage(bufferedImage, null);
+        // written into a WritableImage from the ARGB array of the raster
+        return FXImageBridge.toFXImage(bufferedImage);
     }
 
 }
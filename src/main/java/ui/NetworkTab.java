@@ -0,0 +1,76 @@
+package ui;
+
+import io.PreferenceHelper;
+import javafx.geometry.Insets;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.Spinner;
+import javafx.scene.control.Tab;
+import javafx.scene.layout.GridPane;
+
+
+/**
+ * UI.NetworkTab.java
+ * Used to display and edit the retry, timeout and hedging options of the requests in the preferences panel.
+ * All options take effect from the next request.
+ */
+public final class NetworkTab extends Tab {
+
+    private static final int PANEL_MARGIN = 20;
+    private static final int MINIMUM_MARGIN = 8;
+
+    private static final int MAX_ATTEMPTS = 10;
+    private static final int MAX_TIMEOUT_SECONDS = 120;
+
+    public NetworkTab() {
+
+        // tab header
+        setText(" Network ");
+        // non-closable
+        setClosable(false);
+
+        // 2 * 3 layout
+        var gridPane = new GridPane();
+        gridPane.setHgap(2);
+        gridPane.setVgap(3);
+        gridPane.setPadding(new Insets(PANEL_MARGIN, PANEL_MARGIN + MINIMUM_MARGIN, PANEL_MARGIN, PANEL_MARGIN));
+
+        // add "Max Attempts:" label
+        var maxAttemptsLabel = new Label("Max Attempts:");
+        GridPane.setMargin(maxAttemptsLabel, new Insets(MINIMUM_MARGIN));
+        gridPane.add(maxAttemptsLabel, 0, 0);
+
+        // attempts of a failed, HTTP 429 or 5xx request, including the first one
+        var maxAttemptsSpinner = new Spinner<Integer>(1, MAX_ATTEMPTS,
+                Math.min(Math.max(PreferenceHelper.getRetryMaxAttempts(), 1), MAX_ATTEMPTS));
+        maxAttemptsSpinner.valueProperty().addListener((observable, oldValue, newValue) ->
+                PreferenceHelper.setRetryMaxAttempts(newValue));
+        GridPane.setMargin(maxAttemptsSpinner, new Insets(MINIMUM_MARGIN, MINIMUM_MARGIN, MINIMUM_MARGIN, 0));
+        gridPane.add(maxAttemptsSpinner, 1, 0);
+
+        // add "Attempt Timeout (s):" label
+        var timeoutLabel = new Label("Attempt Timeout (s):");
+        GridPane.setMargin(timeoutLabel, new Insets(MINIMUM_MARGIN));
+        gridPane.add(timeoutLabel, 0, 1);
+
+        var timeoutSpinner = new Spinner<Integer>(1, MAX_TIMEOUT_SECONDS,
+                Math.min(Math.max(PreferenceHelper.getRequestTimeoutSeconds(), 1), MAX_TIMEOUT_SECONDS));
+        timeoutSpinner.valueProperty().addListener((observable, oldValue, newValue) ->
+                PreferenceHelper.setRequestTimeoutSeconds(newValue));
+        GridPane.setMargin(timeoutSpinner, new Insets(MINIMUM_MARGIN, MINIMUM_MARGIN, MINIMUM_MARGIN, 0));
+        gridPane.add(timeoutSpinner, 1, 1);
+
+        // send a second attempt if no response is received within the p95 latency
+        var hedgedRequestOptionCheckBox = new CheckBox("Hedged Requests");
+        hedgedRequestOptionCheckBox.setSelected(PreferenceHelper.getHedgedRequestOption());
+        hedgedRequestOptionCheckBox.selectedProperty().addListener((observable, oldValue, newValue) ->
+                PreferenceHelper.setHedgedRequestOption(newValue));
+
+        GridPane.setMargin(hedgedRequestOptionCheckBox, new Insets(MINIMUM_MARGIN));
+        gridPane.add(hedgedRequestOptionCheckBox, 0, 2, 2, 1);
+
+        setContent(gridPane);
+
+    }
+
+}
@@ -26,9 +26,10 @@ public final class PreferencesDialog {
 
         stage = (Stage) dialog.getDialogPane().getScene().getWindow();
 
-        // add GeneralTab (index 0), FormattingTab (index 1), APICredentialsTab (index 2),
-        // and ProxyTab (index 3) to the TabPane
-        var tabPane = new TabPane(generalTab, new FormattingTab(), new APICredentialsTab(), new ProxyTab());
+        // add GeneralTab (index 0), FormattingTab (index 1), APICredentialsTab (index 2), ProxyTab (index 3),
+        // ImageTab (index 4), NetworkTab (index 5), and DiagnosticsTab (index 6) to the TabPane
+        var tabPane = new TabPane(generalTab, new FormattingTab(), new APICredentialsTab(), new ProxyTab(),
+                new ImageTab(), new NetworkTab(), new DiagnosticsTab());
 
         selectionModel = tabPane.getSelectionModel();
 
@@ -0,0 +1,58 @@
+package mock;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * mock.LatencyDistribution.java
+ * Server-side latency of mock.MockMathpixServer, parsed from a specification such as "lognormal:300:0.5".
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    String USAGE = "fixed:<ms> | uniform:<min ms>:<max ms> | exponential:<mean ms> | lognormal:<median ms>:<sigma>";
+
+    /**
+     * @return next latency in milliseconds.
+     */
+    long sampleMillis();
+
+    /**
+     * @param specification name and parameters separated by colons.
+     * @return parsed distribution.
+     * @throws IllegalArgumentException if the specification is invalid.
+     */
+    static LatencyDistribution parse(String specification) {
+
+        var parts = specification.split(":");
+
+        try {
+            switch (parts[0]) {
+                case "fixed" -> {
+                    var millis = (long) Double.parseDouble(parts[1]);
+                    return () -> millis;
+                }
+                case "uniform" -> {
+                    var min = Double.parseDouble(parts[1]);
+                    var max = Double.parseDouble(parts[2]);
+                    return () -> (long) (min + ThreadLocalRandom.current().nextDouble() * (max - min));
+                }
+                case "exponential" -> {
+                    var mean = Double.parseDouble(parts[1]);
+                    return () -> (long) (-mean * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+                }
+                case "lognormal" -> {
+                    // median of exp(mu + sigma * Z) is exp(mu)
+                    var mu = Math.log(Double.parseDouble(parts[1]));
+                    var sigma = Double.parseDouble(parts[2]);
+                    return () -> (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+                }
+                default -> throw new IllegalArgumentException(specification);
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException(specification, e);
+        }
+
+    }
+
+}
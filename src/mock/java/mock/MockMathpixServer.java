@@ -0,0 +1,454 @@
+package mock;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * mock.MockMathpixServer.java
+ * Local stand-in of the Mathpix POST /v3/text endpoint used by IO.Recognition and IO.OCRRequestHelper.
+ * Answers with canned results after a configurable latency, and fails a configurable share of the requests
+ * with HTTP 500 or HTTP 429, so that retries, concurrency and throughput can be tested without network access.
+ * Run with "./gradlew runMockServer --args='--port 8088'" and start the app with
+ * "-Dimg2latex.api.url=http://localhost:8088/v3/text", or enter the URL as the endpoint in the preferences.
+ */
+public class MockMathpixServer {
+
+    private static final String USAGE = "Usage: MockMathpixServer [--port 8088] [--latency lognormal:300:0.5]"
+            + " [--error-rate 0] [--throttle-rate 0] [--retry-after 1] [--responses responses.json]\n"
+            + "Latency: " + LatencyDistribution.USAGE;
+
+    private final int port;
+    private final LatencyDistribution latencyDistribution;
+    private final double errorRate;
+    private final double throttleRate;
+    private final int retryAfterSeconds;
+    private final List<JsonObject> cannedResponses;
+
+    // responses are sent after the latency without holding a thread
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+        var thread = new Thread(runnable, "mock-responder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong successCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong multipartCount = new AtomicLong();
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+    private final AtomicInteger maxInFlightCount = new AtomicInteger();
+
+    private HttpServer httpServer;
+
+    /**
+     * @param port                local port.
+     * @param latencyDistribution latency added before each response.
+     * @param errorRate           share of the requests answered with HTTP 500.
+     * @param throttleRate        share of the requests answered with HTTP 429.
+     * @param retryAfterSeconds   Retry-After header value of HTTP 429 responses.
+     * @param cannedResponses     results returned in turn, the default ones if empty.
+     */
+    public MockMathpixServer(int port, LatencyDistribution latencyDistribution, double errorRate, double throttleRate,
+                             int retryAfterSeconds, List<JsonObject> cannedResponses) {
+        this.port = port;
+        this.latencyDistribution = latencyDistribution;
+        this.errorRate = errorRate;
+        this.throttleRate = throttleRate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.cannedResponses = cannedResponses.isEmpty() ? getDefaultResponses() : cannedResponses;
+    }
+
+    /**
+     * @param args command line arguments.
+     */
+    public static void main(String[] args) throws IOException {
+
+        var port = 8088;
+        var latencyDistribution = LatencyDistribution.parse("lognormal:300:0.5");
+        var errorRate = 0.0;
+        var throttleRate = 0.0;
+        var retryAfterSeconds = 1;
+        var cannedResponses = new ArrayList<JsonObject>();
+
+        try {
+            for (var i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port" -> port = Integer.parseInt(args[++i]);
+                    case "--latency" -> latencyDistribution = LatencyDistribution.parse(args[++i]);
+                    case "--error-rate" -> errorRate = Double.parseDouble(args[++i]);
+                    case "--throttle-rate" -> throttleRate = Double.parseDouble(args[++i]);
+                    case "--retry-after" -> retryAfterSeconds = Integer.parseInt(args[++i]);
+                    case "--responses" -> cannedResponses.addAll(readResponses(args[++i]));
+                    default -> throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException | JsonParseException e) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        var server = new MockMathpixServer(port, latencyDistribution, errorRate, throttleRate, retryAfterSeconds,
+                cannedResponses);
+        server.start();
+
+        System.err.println("Listening on http://localhost:" + server.getPort() + "/v3/text, statistics on /stats");
+
+        // serve until the process is killed, as all server threads are daemons
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException ignored) {
+        }
+
+    }
+
+    /**
+     * Bind the loopback address and start serving.
+     *
+     * @throws IOException if the port cannot be bound.
+     */
+    public void start() throws IOException {
+
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext("/v3/text", this::handleText);
+        httpServer.createContext("/stats", this::handleStats);
+        httpServer.setExecutor(Executors.newFixedThreadPool(4, runnable -> {
+            var thread = new Thread(runnable, "mock-server");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        httpServer.start();
+
+    }
+
+    /**
+     * Stop serving immediately.
+     */
+    public void stop() {
+        httpServer.stop(0);
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * @return bound port, useful if started with port 0.
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Validate the request like the API does, then answer after the sampled latency.
+     *
+     * @param exchange HTTP exchange to be answered.
+     */
+    private void handleText(HttpExchange exchange) throws IOException {
+
+        requestCount.incrementAndGet();
+
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            rejectedCount.incrementAndGet();
+            respond(exchange, 405, null);
+            return;
+        }
+
+        var headers = exchange.getRequestHeaders();
+        if (headers.getFirst("app_id") == null || headers.getFirst("app_key") == null) {
+            rejectedCount.incrementAndGet();
+            respond(exchange, 401, getError("Invalid credentials"));
+            return;
+        }
+
+        // read the whole upload, as the API does before answering
+        JsonObject request;
+        var contentType = headers.getFirst("Content-Type");
+        if (contentType != null && contentType.startsWith("multipart/form-data")) {
+            JsonObject multipartRequest;
+            try (var inputStream = exchange.getRequestBody()) {
+                multipartRequest = parseMultipart(inputStream.readAllBytes(), contentType);
+            } catch (JsonParseException | IllegalStateException e) {
+                multipartRequest = null;
+            }
+            if (multipartRequest == null) {
+                rejectedCount.incrementAndGet();
+                respond(exchange, 400, getError("Invalid multipart body"));
+                return;
+            }
+            multipartCount.incrementAndGet();
+            request = multipartRequest;
+        } else {
+            try (var reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                request = JsonParser.parseReader(reader).getAsJsonObject();
+            } catch (JsonParseException | IllegalStateException e) {
+                rejectedCount.incrementAndGet();
+                respond(exchange, 400, getError("Invalid JSON"));
+                return;
+            }
+        }
+
+        var src = request.get("src");
+        if (src == null || !src.isJsonPrimitive() || !src.getAsString().startsWith("data:image/")) {
+            rejectedCount.incrementAndGet();
+            respond(exchange, 400, getError("Invalid src"));
+            return;
+        }
+
+        var inFlight = inFlightCount.incrementAndGet();
+        maxInFlightCount.accumulateAndGet(inFlight, Math::max);
+
+        var random = ThreadLocalRandom.current().nextDouble();
+        var latencyMillis = Math.max(latencyDistribution.sampleMillis(), 0);
+
+        scheduler.schedule(() -> {
+            try {
+                if (random < throttleRate) {
+                    throttledCount.incrementAndGet();
+                    exchange.getResponseHeaders().set("Retry-After", Integer.toString(retryAfterSeconds));
+                    respond(exchange, 429, getError("Too many requests"));
+                } else if (random < throttleRate + errorRate) {
+                    errorCount.incrementAndGet();
+                    respond(exchange, 500, getError("Internal server error"));
+                } else {
+                    successCount.incrementAndGet();
+                    respond(exchange, 200, getResult(request));
+                }
+            } catch (IOException ignored) {
+                // the client has closed the connection
+            } finally {
+                inFlightCount.decrementAndGet();
+            }
+        }, latencyMillis, TimeUnit.MILLISECONDS);
+
+    }
+
+    /**
+     * Read the "options_json" and "file" parts of a multipart upload into the layout of a JSON request.
+     * The "src" value only keeps the data URL header, built from the Content-Type of the file part.
+     *
+     * @param body        whole request body.
+     * @param contentType Content-Type header with the boundary.
+     * @return request parameters, null if a part is missing or empty.
+     */
+    private static JsonObject parseMultipart(byte[] body, String contentType) {
+
+        var boundaryIndex = contentType.indexOf("boundary=");
+        if (boundaryIndex < 0) {
+            return null;
+        }
+
+        var delimiter = "--" + contentType.substring(boundaryIndex + "boundary=".length()).replace("\"", "").strip();
+        // ISO-8859-1 maps every byte to one char, so that the indices of the text are the byte offsets
+        var text = new String(body, StandardCharsets.ISO_8859_1);
+
+        JsonObject request = null;
+        String fileType = null;
+        var fileLength = 0;
+
+        for (var start = text.indexOf(delimiter); start >= 0; ) {
+
+            var next = text.indexOf("\r\n" + delimiter, start + delimiter.length());
+            var headerEnd = text.indexOf("\r\n\r\n", start);
+            if (next < 0 || headerEnd < 0 || headerEnd > next) {
+                break;
+            }
+
+            var partHeaders = text.substring(start, headerEnd);
+            var partBody = text.substring(headerEnd + 4, next);
+
+            if (partHeaders.contains("name=\"options_json\"")) {
+                request = JsonParser.parseString(new String(partBody.getBytes(StandardCharsets.ISO_8859_1),
+                        StandardCharsets.UTF_8)).getAsJsonObject();
+            } else if (partHeaders.contains("name=\"file\"")) {
+                var typeIndex = partHeaders.indexOf("Content-Type: ");
+                fileType = typeIndex < 0 ? "" : partHeaders.substring(typeIndex + "Content-Type: ".length()).split("\r\n")[0];
+                fileLength = partBody.length();
+            }
+
+            start = next + 2;
+
+        }
+
+        if (request == null || fileType == null || fileLength == 0) {
+            return null;
+        }
+
+        request.addProperty("src", "data:" + fileType + ";base64,");
+
+        return request;
+
+    }
+
+    /**
+     * @param exchange HTTP exchange to be answered with the counters.
+     */
+    private void handleStats(HttpExchange exchange) throws IOException {
+
+        var stats = new JsonObject();
+        stats.addProperty("requests", requestCount.get());
+        stats.addProperty("succeeded", successCount.get());
+        stats.addProperty("failed", errorCount.get());
+        stats.addProperty("throttled", throttledCount.get());
+        stats.addProperty("rejected", rejectedCount.get());
+        stats.addProperty("multipart", multipartCount.get());
+        stats.addProperty("in_flight", inFlightCount.get());
+        stats.addProperty("max_in_flight", maxInFlightCount.get());
+
+        respond(exchange, 200, stats);
+
+    }
+
+    /**
+     * Pick the next canned result and keep the formats and data types asked by the request.
+     *
+     * @param request request parameters.
+     * @return result in the API response layout.
+     */
+    private JsonObject getResult(JsonObject request) {
+
+        var cannedResponse = cannedResponses.get((int) (successCount.get() % cannedResponses.size()));
+        var formats = request.has("formats") ? request.getAsJsonArray("formats") : new JsonArray();
+        var dataOptions = request.has("data_options") ? request.getAsJsonObject("data_options") : new JsonObject();
+
+        var result = new JsonObject();
+        if (formats.contains(new JsonPrimitive("text"))) {
+            result.add("text", cannedResponse.get("text"));
+        }
+        result.add("confidence", cannedResponse.get("confidence"));
+
+        var cannedData = cannedResponse.getAsJsonArray("data");
+        if (formats.contains(new JsonPrimitive("data")) && cannedData != null) {
+            var data = new JsonArray();
+            for (JsonElement element : cannedData) {
+                var type = element.getAsJsonObject().get("type").getAsString();
+                var option = dataOptions.get("include_" + type);
+                if (option != null && option.getAsBoolean()) {
+                    data.add(element);
+                }
+            }
+            result.add("data", data);
+        }
+
+        return result;
+
+    }
+
+    /**
+     * @param exchange   HTTP exchange to be answered.
+     * @param statusCode HTTP status code.
+     * @param body       JSON body, null for no body.
+     */
+    private static void respond(HttpExchange exchange, int statusCode, JsonObject body) throws IOException {
+
+        try (exchange) {
+
+            if (body == null) {
+                exchange.sendResponseHeaders(statusCode, -1);
+                return;
+            }
+
+            var bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(statusCode, bytes.length);
+            exchange.getResponseBody().write(bytes);
+
+        }
+
+    }
+
+    /**
+     * @param message error message.
+     * @return error in the API response layout.
+     */
+    private static JsonObject getError(String message) {
+        var error = new JsonObject();
+        error.addProperty("error", message);
+        return error;
+    }
+
+    /**
+     * @param path JSON file of an array of results in the API response layout.
+     * @return results in the file.
+     */
+    private static List<JsonObject> readResponses(String path) {
+
+        var responses = new ArrayList<JsonObject>();
+
+        try (var reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            for (JsonElement element : JsonParser.parseReader(reader).getAsJsonArray()) {
+                responses.add(element.getAsJsonObject());
+            }
+        } catch (IOException | IllegalStateException e) {
+            throw new IllegalArgumentException(path, e);
+        }
+
+        return responses;
+
+    }
+
+    /**
+     * @return results of a fraction, a matrix and an inline equation.
+     */
+    private static List<JsonObject> getDefaultResponses() {
+
+        var responses = new ArrayList<JsonObject>();
+
+        responses.add(getResponse("\\( \\frac{a}{b} + c \\)", 0.99,
+                "<math><mfrac><mi>a</mi><mi>b</mi></mfrac><mo>+</mo><mi>c</mi></math>", "\\frac{a}{b} + c"));
+        responses.add(getResponse("\\[ \\left[\\begin{array}{ll} 1 & 0 \\\\ 0 & 1 \\end{array}\\right] \\]", 0.93,
+                "<math><mrow><mo>[</mo><mtable><mtr><mtd><mn>1</mn></mtd><mtd><mn>0</mn></mtd></mtr>"
+                        + "<mtr><mtd><mn>0</mn></mtd><mtd><mn>1</mn></mtd></mtr></mtable><mo>]</mo></mrow></math>",
+                "1\t0\n0\t1"));
+        responses.add(getResponse("\\( e^{i \\pi} + 1 = 0 \\)", 0.97,
+                "<math><msup><mi>e</mi><mrow><mi>i</mi><mi>\u03c0</mi></mrow></msup><mo>+</mo><mn>1</mn><mo>=</mo>"
+                        + "<mn>0</mn></math>", "e^{i \\pi} + 1 = 0"));
+
+        return responses;
+
+    }
+
+    /**
+     * @return result in the API response layout.
+     */
+    private static JsonObject getResponse(String text, double confidence, String mathML, String tsv) {
+
+        var response = new JsonObject();
+        response.addProperty("text", text);
+        response.addProperty("confidence", confidence);
+
+        var data = new JsonArray();
+        for (String[] entry : new String[][]{{"mathml", mathML}, {"tsv", tsv}}) {
+            var dataEntry = new JsonObject();
+            dataEntry.addProperty("type", entry[0]);
+            dataEntry.addProperty("value", entry[1]);
+            data.add(dataEntry);
+        }
+        response.add("data", data);
+
+        return response;
+
+    }
+
+}
@@ -0,0 +1,404 @@
+package io;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/**
+ * IO.HistoryStoreTest.java
+ * Reopens the IO.HistoryStore after damaging its files as a crash would, and checks what is recovered.
+ * The store opens its files when the class is initialised, so every session loads a fresh copy of the class
+ * with the home directory pointed at a temporary directory.
+ */
+class HistoryStoreTest {
+
+    // size of an index record, see IO.HistoryStore
+    private static final int INDEX_RECORD_SIZE = Long.BYTES + Integer.BYTES + Long.BYTES + 32;
+
+    @TempDir
+    Path homeDirectory;
+
+    private String userHome;
+    private Path logPath;
+    private Path indexPath;
+    private Path tokenIndexPath;
+
+    @BeforeEach
+    void setUp() {
+
+        userHome = System.getProperty("user.home");
+        System.setProperty("user.home", homeDirectory.toString());
+
+        var historyDirectory = homeDirectory.resolve(".img2latex").resolve("history");
+        logPath = historyDirectory.resolve("history.log");
+        indexPath = historyDirectory.resolve("history.idx");
+        tokenIndexPath = historyDirectory.resolve("tokens.idx");
+
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setProperty("user.home", userHome);
+    }
+
+    @Test
+    void reopenKeepsAllEntries() {
+
+        try (var store = new Session()) {
+            for (var i = 0; i < 3; i++) {
+                store.append(i);
+            }
+        }
+
+        try (var store = new Session()) {
+            assertEquals(3, store.getSize());
+            for (var i = 0; i < 3; i++) {
+                assertEquals(getText(i), store.get(getKey(i)).getText());
+            }
+            assertEquals(List.of(1), store.search("beta1"));
+        }
+
+    }
+
+    @Test
+    void truncatedIndexRecordIsRecoveredFromLog() throws IOException {
+
+        writeEntries(3);
+        truncate(indexPath, Files.size(indexPath) - 10);
+
+        try (var store = new Session()) {
+            assertEquals(3, store.getSize());
+            assertEquals(getText(2), store.get(getKey(2)).getText());
+        }
+
+        assertEquals(3L * INDEX_RECORD_SIZE, Files.size(indexPath));
+
+    }
+
+    @Test
+    void missingIndexIsRebuiltFromLog() throws IOException {
+
+        writeEntries(3);
+        Files.delete(indexPath);
+
+        try (var store = new Session()) {
+            assertEquals(3, store.getSize());
+            for (var i = 0; i < 3; i++) {
+                assertEquals(getText(i), store.get(getKey(i)).getText());
+            }
+        }
+
+    }
+
+    @Test
+    void tornLogTailIsDropped() throws IOException {
+
+        writeEntries(2);
+        var completeLogSize = Files.size(logPath);
+        writeEntries(1, 2);
+
+        // the last record is cut in the middle, with its index record lost as well
+        truncate(logPath, completeLogSize + (Files.size(logPath) - completeLogSize) / 2);
+        truncate(indexPath, 2L * INDEX_RECORD_SIZE);
+
+        try (var store = new Session()) {
+            assertEquals(2, store.getSize());
+            assertNull(store.get(getKey(2)));
+            // appended after the recovered records
+            store.append(3);
+        }
+
+        try (var store = new Session()) {
+            assertEquals(3, store.getSize());
+            assertEquals(getText(3), store.get(getKey(3)).getText());
+            assertEquals(List.of(2), store.search("beta3"));
+        }
+
+    }
+
+    @Test
+    void garbageAfterLastRecordIsTruncated() throws IOException {
+
+        writeEntries(2);
+        var completeLogSize = Files.size(logPath);
+        Files.write(logPath, "not a record".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+
+        try (var store = new Session()) {
+            assertEquals(2, store.getSize());
+        }
+
+        assertEquals(completeLogSize, Files.size(logPath));
+
+    }
+
+    @Test
+    void indexAheadOfLogIsCut() throws IOException {
+
+        writeEntries(1);
+        var firstRecordEnd = Files.size(logPath);
+        writeEntries(2, 1);
+
+        // the log lost its last records but the index kept them
+        truncate(logPath, firstRecordEnd);
+
+        try (var store = new Session()) {
+            assertEquals(1, store.getSize());
+            assertEquals(getText(0), store.get(getKey(0)).getText());
+            assertNull(store.get(getKey(1)));
+            assertEquals(List.of(), store.search("beta2"));
+        }
+
+        assertEquals(INDEX_RECORD_SIZE, Files.size(indexPath));
+
+    }
+
+    @Test
+    void staleTokenIndexIsCompleted() throws IOException {
+
+        writeEntries(1);
+        var staleTokenIndex = Files.readAllBytes(tokenIndexPath);
+        writeEntries(2, 1);
+
+        // as if the app quit without saving the token index
+        Files.write(tokenIndexPath, staleTokenIndex);
+
+        try (var store = new Session()) {
+            assertEquals(List.of(0), store.search("beta0"));
+            assertEquals(List.of(2), store.search("beta2"));
+            assertEquals(List.of(2, 1, 0), store.search("alpha"));
+        }
+
+    }
+
+    @Test
+    void tokenIndexLargerThanStoreIsIgnored() throws IOException {
+
+        writeEntries(1);
+        var firstRecordEnd = Files.size(logPath);
+        writeEntries(2, 1);
+
+        // the token index covers 3 entries, the log only the first one
+        truncate(logPath, firstRecordEnd);
+
+        try (var store = new Session()) {
+            assertEquals(1, store.getSize());
+            assertEquals(List.of(0), store.search("alpha"));
+            // the new entry takes the id of a lost one, without its tokens
+            store.append(3);
+            assertEquals(List.of(), store.search("beta1"));
+            assertEquals(List.of(1), store.search("beta3"));
+        }
+
+    }
+
+    @Test
+    void brokenTokenIndexIsRebuilt() throws IOException {
+
+        writeEntries(2);
+        var tokenIndex = Files.readAllBytes(tokenIndexPath);
+        Files.write(tokenIndexPath, Arrays.copyOf(tokenIndex, tokenIndex.length / 2));
+
+        try (var store = new Session()) {
+            assertEquals(List.of(1, 0), store.search("alpha"));
+            assertEquals(List.of(1), store.search("beta1"));
+        }
+
+    }
+
+    /**
+     * Append the entries 0 to count - 1 in a session.
+     */
+    private static void writeEntries(int count) {
+        writeEntries(count, 0);
+    }
+
+    /**
+     * Append count entries from the first index in a session.
+     */
+    private static void writeEntries(int count, int first) {
+        try (var store = new Session()) {
+            for (var i = first; i < first + count; i++) {
+                store.append(i);
+            }
+        }
+    }
+
+    /**
+     * @param path file to be truncated.
+     * @param size new size of the file.
+     */
+    private static void truncate(Path path, long size) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    /**
+     * @param i index of the entry.
+     * @return LaTeX result of the entry, every entry has "alpha" and its own "beta" token.
+     */
+    private static String getText(int i) {
+        return "\\( \\alpha + alpha \\cdot beta" + i + " \\)";
+    }
+
+    /**
+     * @param i index of the entry.
+     * @return hex key of the entry.
+     */
+    private static String getKey(int i) {
+
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        var hash = messageDigest.digest(("entry " + i).getBytes(StandardCharsets.US_ASCII));
+        var hexBuilder = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hexBuilder.append(Character.forDigit(b >> 4 & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return hexBuilder.toString();
+
+    }
+
+    /**
+     * A run of the app, with its own copy of the IO.HistoryStore class opened on creation and shut down on close.
+     */
+    private static final class Session implements AutoCloseable {
+
+        private final Class<?> storeClass;
+
+        private Session() {
+            try {
+                storeClass = Class.forName("io.HistoryStore", true, new IsolatingClassLoader());
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void append(int i) {
+            var image = new BufferedImage(8, 4, BufferedImage.TYPE_INT_RGB);
+            invoke("append", new Class<?>[]{String.class, BufferedImage.class, Response.class},
+                    getKey(i), image, new Response(null, getText(i), 0.9, List.of()));
+        }
+
+        private Response get(String key) {
+            // queued after the pending appends
+            search("", 0);
+            return (Response) invoke("get", new Class<?>[]{String.class}, key);
+        }
+
+        private int getSize() {
+            search("", 0);
+            return (int) invoke("getSize", new Class<?>[0]);
+        }
+
+        /**
+         * @return ids of the matching entries, newest first.
+         */
+        private List<Integer> search(String query) {
+            return search(query, Integer.MAX_VALUE);
+        }
+
+        private List<Integer> search(String query, int limit) {
+
+            var future = (CompletableFuture<?>) invoke("search", new Class<?>[]{String.class, int.class}, query, limit);
+
+            var ids = new ArrayList<Integer>();
+            for (var entry : (List<?>) future.join()) {
+                try {
+                    ids.add((int) entry.getClass().getMethod("getId").invoke(entry));
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            return ids;
+
+        }
+
+        private Object invoke(String name, Class<?>[] parameterTypes, Object... arguments) {
+            try {
+                return storeClass.getMethod(name, parameterTypes).invoke(null, arguments);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException(e.getCause());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            invoke("shutdown", new Class<?>[0]);
+        }
+
+    }
+
+    /**
+     * Defines its own copy of IO.HistoryStore and its nested classes, every other class is shared.
+     */
+    private static final class IsolatingClassLoader extends ClassLoader {
+
+        private IsolatingClassLoader() {
+            super(HistoryStoreTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+
+            if (!name.equals("io.HistoryStore") && !name.startsWith("io.HistoryStore$")) {
+                return super.loadClass(name, resolve);
+            }
+
+            synchronized (getClassLoadingLock(name)) {
+
+                var loadedClass = findLoadedClass(name);
+                if (loadedClass == null) {
+                    try (var inputStream = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                        if (inputStream == null) {
+                            throw new ClassNotFoundException(name);
+                        }
+                        var bytes = inputStream.readAllBytes();
+                        loadedClass = defineClass(name, bytes, 0, bytes.length);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                if (resolve) {
+                    resolveClass(loadedClass);
+                }
+
+                return loadedClass;
+
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,120 @@
+package io;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * IO.LaTeXFormatterTest.java
+ * Compares IO.LaTeXFormatter with the golden outputs of the former String.replace() chain for every delimiter option.
+ * Each corpus entry holds an input, its second formatted result of options 0 to 3 and its third of options 0 to 2.
+ */
+class LaTeXFormatterTest {
+
+    // delimiters of the second and the third formatting options in the order of IO.IOUtils
+    private static final String[][] SECOND_DELIMITERS = {
+            {"\\begin{equation*}", "\\end{equation*}"},
+            {"\\begin{align*}", "\\end{align*}"},
+            {"$$", "$$"},
+            {"\\[", "\\]"}
+    };
+    private static final String[][] THIRD_DELIMITERS = {
+            {"\\begin{equation}", "\\end{equation}"},
+            {"\\begin{align}", "\\end{align}"},
+            {"$", "$"}
+    };
+
+    private static final List<JsonObject> CORPUS = new ArrayList<>();
+
+    @BeforeAll
+    static void loadCorpus() throws IOException {
+
+        var inputStream = LaTeXFormatterTest.class.getResourceAsStream("latex-formatter-golden.json");
+
+        try (var reader = new InputStreamReader(Objects.requireNonNull(inputStream), StandardCharsets.UTF_8)) {
+            for (var element : JsonParser.parseReader(reader).getAsJsonArray()) {
+                CORPUS.add(element.getAsJsonObject());
+            }
+        }
+
+    }
+
+    @Test
+    void isTextAllWrapped() {
+        for (var entry : CORPUS) {
+            var input = entry.get("input").getAsString();
+            assertEquals(entry.get("allWrapped").getAsBoolean(), LaTeXFormatter.isTextAllWrapped(input), input);
+        }
+    }
+
+    @Test
+    void formatSecondResults() {
+        for (var entry : CORPUS) {
+            assertFormat(entry, "second", SECOND_DELIMITERS);
+        }
+    }
+
+    @Test
+    void formatThirdResults() {
+        for (var entry : CORPUS) {
+            assertFormat(entry, "third", THIRD_DELIMITERS);
+        }
+    }
+
+    /**
+     * The second and the third results are produced together by IO.IOUtils.resultsFormatter().
+     */
+    @Test
+    void formatSecondAndThirdResultsInOnePass() {
+
+        for (var entry : CORPUS) {
+
+            var input = entry.get("input").getAsString();
+            var secondArray = entry.getAsJsonArray("second");
+            var thirdArray = entry.getAsJsonArray("third");
+
+            for (var i = 0; i < SECOND_DELIMITERS.length; i++) {
+                for (var j = 0; j < THIRD_DELIMITERS.length; j++) {
+                    var results = LaTeXFormatter.format(input,
+                            new String[]{SECOND_DELIMITERS[i][0], THIRD_DELIMITERS[j][0]},
+                            new String[]{SECOND_DELIMITERS[i][1], THIRD_DELIMITERS[j][1]});
+                    assertArrayEquals(new String[]{secondArray.get(i).getAsString(), thirdArray.get(j).getAsString()},
+                            results, input);
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * @param entry      corpus entry.
+     * @param name       name of the expected outputs.
+     * @param delimiters delimiters of each option.
+     */
+    private static void assertFormat(JsonObject entry, String name, String[][] delimiters) {
+
+        var input = entry.get("input").getAsString();
+        var expectedArray = entry.getAsJsonArray(name);
+
+        for (var i = 0; i < delimiters.length; i++) {
+            var expected = expectedArray.get(i).getAsString();
+            assertEquals(expected, LaTeXFormatter.format(input, delimiters[i][0], delimiters[i][1]), input);
+            assertEquals(expected, IOUtils.formatHelper(input, delimiters[i][0], delimiters[i][1]), input);
+        }
+
+    }
+
+}
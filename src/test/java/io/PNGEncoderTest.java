@@ -0,0 +1,275 @@
+package io;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * IO.PNGEncoderTest.java
+ * Decodes the output of IO.PNGEncoder with ImageIO for every color type and filter, and compares it with the source pixels.
+ * The scanlines are also inflated to check the filter type written in front of each row.
+ */
+class PNGEncoderTest {
+
+    // width * height of the test images, covering single pixel rows and columns
+    private static final int[][] SIZES = {{1, 1}, {1, 5}, {5, 1}, {37, 23}};
+
+    @Test
+    void encodeRGB() throws IOException {
+        for (var size : SIZES) {
+            var image = newImage(size[0], size[1], BufferedImage.TYPE_INT_RGB, false);
+            for (var filter : PNGEncoder.Filter.values()) {
+                var bytes = encode(image, PNGEncoder.ColorType.RGB, null, filter);
+                assertArrayEquals(getPixels(image), getPixels(ImageIO.read(new ByteArrayInputStream(bytes))), filter.name());
+                assertFilterTypes(bytes, filter, size[0] * 3);
+            }
+        }
+    }
+
+    @Test
+    void encodeRGBA() throws IOException {
+        for (var size : SIZES) {
+            var image = newImage(size[0], size[1], BufferedImage.TYPE_INT_ARGB, true);
+            for (var filter : PNGEncoder.Filter.values()) {
+                var bytes = encode(image, PNGEncoder.ColorType.RGBA, null, filter);
+                assertArrayEquals(getPixels(image), getPixels(ImageIO.read(new ByteArrayInputStream(bytes))), filter.name());
+                assertFilterTypes(bytes, filter, size[0] * 4);
+            }
+        }
+    }
+
+    /**
+     * Gray samples are compared as stored, getRGB() would convert them from the linear gray color space.
+     */
+    @Test
+    void encodeGray() throws IOException {
+        for (var size : SIZES) {
+            var image = newImage(size[0], size[1], BufferedImage.TYPE_BYTE_GRAY, false);
+            for (var filter : PNGEncoder.Filter.values()) {
+                var bytes = encode(image, PNGEncoder.ColorType.GRAY, null, filter);
+                var decodedImage = ImageIO.read(new ByteArrayInputStream(bytes));
+                assertEquals(BufferedImage.TYPE_BYTE_GRAY, decodedImage.getType());
+                assertArrayEquals(getSamples(image), getSamples(decodedImage), filter.name());
+                assertFilterTypes(bytes, filter, size[0]);
+            }
+        }
+    }
+
+    @Test
+    void encodeIndexed() throws IOException {
+
+        // translucent colors are written to the tRNS chunk
+        var palette = new int[200];
+        for (var i = 0; i < palette.length; i++) {
+            palette[i] = (i % 4 == 0 ? 0x80 : 0xff) << 24 | i * 0x010307 & 0xffffff;
+        }
+
+        var random = new Random(1);
+        for (var size : SIZES) {
+            var image = new BufferedImage(size[0], size[1], BufferedImage.TYPE_INT_ARGB);
+            for (var y = 0; y < size[1]; y++) {
+                for (var x = 0; x < size[0]; x++) {
+                    image.setRGB(x, y, palette[(x + y) % 7 == 0 ? random.nextInt(palette.length) : y % palette.length]);
+                }
+            }
+            for (var filter : PNGEncoder.Filter.values()) {
+                var bytes = encode(image, PNGEncoder.ColorType.INDEXED, palette, filter);
+                assertArrayEquals(getPixels(image), getPixels(ImageIO.read(new ByteArrayInputStream(bytes))), filter.name());
+                // filtering does not help indexed pixels
+                assertFilterTypes(bytes, filter == PNGEncoder.Filter.ADAPTIVE ? PNGEncoder.Filter.NONE : filter, size[0]);
+            }
+        }
+
+    }
+
+    /**
+     * Sub-images are read from the array of their parent.
+     */
+    @Test
+    void encodeSubimage() throws IOException {
+
+        var image = newImage(37, 23, BufferedImage.TYPE_INT_ARGB, true).getSubimage(5, 3, 20, 11);
+
+        for (var filter : PNGEncoder.Filter.values()) {
+            var bytes = encode(image, PNGEncoder.ColorType.RGBA, null, filter);
+            assertArrayEquals(getPixels(image), getPixels(ImageIO.read(new ByteArrayInputStream(bytes))), filter.name());
+        }
+
+    }
+
+    /**
+     * Pixels of other types are read as non-premultiplied ARGB.
+     */
+    @Test
+    void encodeOtherImageTypes() throws IOException {
+
+        var source = newImage(37, 23, BufferedImage.TYPE_INT_RGB, false);
+
+        for (var type : new int[]{BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_INT_ARGB_PRE}) {
+            var image = new BufferedImage(source.getWidth(), source.getHeight(), type);
+            image.createGraphics().drawImage(source, 0, 0, null);
+            var bytes = encode(image, PNGEncoder.ColorType.RGB, null, PNGEncoder.Filter.ADAPTIVE);
+            assertArrayEquals(getPixels(source), getPixels(ImageIO.read(new ByteArrayInputStream(bytes))), Integer.toString(type));
+        }
+
+    }
+
+    @Test
+    void encodeWithEveryLevel() throws IOException {
+
+        var image = newImage(37, 23, BufferedImage.TYPE_INT_RGB, false);
+
+        for (var level = 0; level <= 9; level++) {
+            var bytes = encode(image, PNGEncoder.ColorType.RGB, null, PNGEncoder.Filter.ADAPTIVE, level);
+            assertArrayEquals(getPixels(image), getPixels(ImageIO.read(new ByteArrayInputStream(bytes))), Integer.toString(level));
+        }
+
+    }
+
+    /**
+     * @param hasAlpha whether the alpha channel varies, including fully transparent pixels.
+     * @return image of gradients and noise, so that each filter has rows it fits.
+     */
+    private static BufferedImage newImage(int width, int height, int type, boolean hasAlpha) {
+
+        var image = new BufferedImage(width, height, type);
+        var random = new Random(width * 31L + height);
+
+        for (var y = 0; y < height; y++) {
+            for (var x = 0; x < width; x++) {
+                var alpha = hasAlpha ? (x * 7 + y * 3) % 5 * 0x3f : 0xff;
+                var argb = switch (y % 3) {
+                    case 0 -> alpha << 24 | (x * 9 & 0xff) << 16 | (y * 11 & 0xff) << 8 | (x + y) * 5 & 0xff;
+                    case 1 -> alpha << 24 | random.nextInt(0x1000000);
+                    default -> alpha << 24 | (x % 2 == 0 ? 0x204060 : 0xc0a080);
+                };
+                if (type == BufferedImage.TYPE_BYTE_GRAY) {
+                    image.getRaster().setSample(x, y, 0, argb & 0xff);
+                } else {
+                    image.setRGB(x, y, argb);
+                }
+            }
+        }
+
+        return image;
+
+    }
+
+    private static byte[] encode(BufferedImage image, PNGEncoder.ColorType colorType, int[] palette,
+                                 PNGEncoder.Filter filter) throws IOException {
+        return encode(image, colorType, palette, filter, 6);
+    }
+
+    private static byte[] encode(BufferedImage image, PNGEncoder.ColorType colorType, int[] palette,
+                                 PNGEncoder.Filter filter, int level) throws IOException {
+
+        var outputStream = new ByteArrayOutputStream();
+        PNGEncoder.encode(image, colorType, palette, palette == null ? null : new PNGEncoder.PaletteIndexMap(palette),
+                filter, level, outputStream);
+
+        return outputStream.toByteArray();
+
+    }
+
+    /**
+     * @return non-premultiplied ARGB pixels.
+     */
+    private static int[] getPixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    /**
+     * @return samples of the first band as stored.
+     */
+    private static int[] getSamples(BufferedImage image) {
+        return image.getRaster().getSamples(0, 0, image.getWidth(), image.getHeight(), 0, (int[]) null);
+    }
+
+    /**
+     * Check the filter type of each row, any of the four filters for ADAPTIVE.
+     *
+     * @param bytes     PNG file.
+     * @param filter    filter used to encode the rows.
+     * @param rowLength bytes of a row without its filter type.
+     */
+    private static void assertFilterTypes(byte[] bytes, PNGEncoder.Filter filter, int rowLength) throws IOException {
+
+        var scanlines = inflateScanlines(bytes);
+        assertEquals(0, scanlines.length % (rowLength + 1));
+
+        var types = new LinkedHashSet<Integer>();
+        for (var i = 0; i < scanlines.length; i += rowLength + 1) {
+            types.add((int) scanlines[i]);
+        }
+
+        switch (filter) {
+            case NONE -> assertEquals(Set.of(0), types);
+            case SUB -> assertEquals(Set.of(1), types);
+            case UP -> assertEquals(Set.of(2), types);
+            case PAETH -> assertEquals(Set.of(4), types);
+            default -> assertTrue(Set.of(0, 1, 2, 4).containsAll(types), types.toString());
+        }
+
+    }
+
+    /**
+     * @param bytes PNG file.
+     * @return inflated data of all IDAT chunks.
+     */
+    private static byte[] inflateScanlines(byte[] bytes) throws IOException {
+
+        var inputStream = new DataInputStream(new ByteArrayInputStream(bytes));
+        inputStream.skipNBytes(8);
+
+        var idat = new ByteArrayOutputStream();
+        while (inputStream.available() > 0) {
+            var length = inputStream.readInt();
+            var type = new String(inputStream.readNBytes(4), StandardCharsets.US_ASCII);
+            var data = inputStream.readNBytes(length);
+            // CRC
+            inputStream.readInt();
+            if ("IDAT".equals(type)) {
+                idat.write(data);
+            }
+        }
+
+        var inflater = new Inflater();
+        inflater.setInput(idat.toByteArray());
+
+        var scanlines = new ByteArrayOutputStream();
+        var buffer = new byte[4096];
+        try {
+            while (!inflater.finished()) {
+                var count = inflater.inflate(buffer);
+                if (count == 0 && inflater.needsInput()) {
+                    throw new IOException("Truncated IDAT");
+                }
+                scanlines.write(buffer, 0, count);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+
+        return scanlines.toByteArray();
+
+    }
+
+}
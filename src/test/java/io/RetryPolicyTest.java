@@ -0,0 +1,309 @@
+package io;
+
+import mock.LatencyDistribution;
+import mock.MockMathpixServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLSession;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * IO.RetryPolicyTest.java
+ * Checks the Retry-After parsing, the retries of HTTP 429 responses of the mock server,
+ * and that the losing response of a hedge race is released.
+ */
+class RetryPolicyTest {
+
+    private static final String PREFERENCES_NODE_PATH = "img2latex-test/retry-policy";
+
+    private static final String REQUEST_BODY = "{\"src\":\"data:image/png;base64,iVBORw0KGgo=\",\"formats\":[\"text\"]}";
+
+    private static final HttpClient HTTP_CLIENT = HttpClient.newHttpClient();
+
+    private static MockMathpixServer throttlingServer;
+    private static MockMathpixServer healthyServer;
+
+    @BeforeAll
+    static void startServers() throws IOException {
+
+        // every request is answered with HTTP 429 and "Retry-After: 1"
+        throttlingServer = new MockMathpixServer(0, LatencyDistribution.parse("fixed:0"), 0, 1, 1, List.of());
+        throttlingServer.start();
+
+        healthyServer = new MockMathpixServer(0, LatencyDistribution.parse("fixed:0"), 0, 0, 1, List.of());
+        healthyServer.start();
+
+    }
+
+    @AfterAll
+    static void stopServers() throws BackingStoreException {
+
+        throttlingServer.stop();
+        healthyServer.stop();
+
+        Preferences.userRoot().node(PREFERENCES_NODE_PATH).removeNode();
+
+    }
+
+    @Test
+    void parseRetryAfterDeltaSeconds() {
+        assertEquals(0, RetryPolicy.parseRetryAfterMillis("0"));
+        assertEquals(120_000, RetryPolicy.parseRetryAfterMillis("120"));
+        assertEquals(3_000, RetryPolicy.parseRetryAfterMillis(" 3 "));
+        assertEquals(Long.MAX_VALUE, RetryPolicy.parseRetryAfterMillis("99999999999999999999999"));
+    }
+
+    @Test
+    void parseRetryAfterDate() {
+
+        var retryAt = ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(30);
+        var retryAfterMillis = RetryPolicy.parseRetryAfterMillis(DateTimeFormatter.RFC_1123_DATE_TIME.format(retryAt));
+        // the date has a precision of one second
+        assertTrue(retryAfterMillis > 28_000 && retryAfterMillis <= 30_000, Long.toString(retryAfterMillis));
+
+        var pastDate = DateTimeFormatter.RFC_1123_DATE_TIME.format(retryAt.minusHours(1));
+        assertEquals(0, RetryPolicy.parseRetryAfterMillis(pastDate));
+
+    }
+
+    @Test
+    void parseInvalidRetryAfter() {
+        for (var value : new String[]{"", " ", "-5", "1.5", "soon", "Tue, 32 Jan 2030 00:00:00 GMT"}) {
+            assertEquals(0, RetryPolicy.parseRetryAfterMillis(value), value);
+        }
+    }
+
+    @Test
+    void retryThrottledRequestAfterRetryAfter() {
+
+        var attemptCount = new AtomicInteger();
+        var startNanos = System.nanoTime();
+
+        // only the first attempt is throttled
+        var response = RetryPolicy.execute(getSnapshot(3, false), () ->
+                send(attemptCount.getAndIncrement() == 0 ? throttlingServer : healthyServer)).join();
+
+        assertEquals(200, response.statusCode());
+        assertEquals(2, attemptCount.get());
+        // the backoff is at least the Retry-After value
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) >= 1000);
+
+    }
+
+    @Test
+    void returnLastThrottledResponseAfterMaxAttempts() {
+
+        var attemptCount = new AtomicInteger();
+        var exhaustedCount = RetryPolicy.getExhaustedCount();
+
+        var response = RetryPolicy.execute(getSnapshot(2, false), () -> {
+            attemptCount.incrementAndGet();
+            return send(throttlingServer);
+        }).join();
+
+        assertEquals(429, response.statusCode());
+        assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+        assertEquals(2, attemptCount.get());
+        assertEquals(exhaustedCount + 1, RetryPolicy.getExhaustedCount());
+
+    }
+
+    @Test
+    void discardLoserOfHedgeRace() throws InterruptedException {
+
+        // enough successful attempts for a p95 latency
+        while (RetryPolicy.getP95LatencyMillis() < 0) {
+            RetryPolicy.execute(getSnapshot(1, false), () -> CompletableFuture.completedFuture(new StubResponse(200))).join();
+        }
+
+        var firstFuture = new CompletableFuture<HttpResponse<Closeable>>();
+        var hedgeFuture = new CompletableFuture<HttpResponse<Closeable>>();
+        var futures = List.of(firstFuture, hedgeFuture);
+        var attemptCount = new AtomicInteger();
+        var hedgeSent = new CountDownLatch(1);
+
+        var result = RetryPolicy.execute(getSnapshot(1, true), () -> {
+            var future = futures.get(attemptCount.getAndIncrement());
+            if (future == hedgeFuture) {
+                hedgeSent.countDown();
+            }
+            return future;
+        });
+
+        // the first attempt is still pending when the hedge is sent
+        assertTrue(hedgeSent.await(10, TimeUnit.SECONDS));
+
+        var hedgeResponse = new StubResponse(200);
+        hedgeFuture.complete(hedgeResponse);
+        assertSame(hedgeResponse, result.join());
+
+        var firstResponse = new StubResponse(200);
+        firstFuture.complete(firstResponse);
+
+        assertTrue(firstResponse.isClosed());
+        assertFalse(hedgeResponse.isClosed());
+        assertEquals(2, attemptCount.get());
+
+    }
+
+    @Test
+    void discardRetryableResponseOfHedgeRace() throws InterruptedException {
+
+        while (RetryPolicy.getP95LatencyMillis() < 0) {
+            RetryPolicy.execute(getSnapshot(1, false), () -> CompletableFuture.completedFuture(new StubResponse(200))).join();
+        }
+
+        var firstFuture = new CompletableFuture<HttpResponse<Closeable>>();
+        var hedgeFuture = new CompletableFuture<HttpResponse<Closeable>>();
+        var futures = List.of(firstFuture, hedgeFuture);
+        var attemptCount = new AtomicInteger();
+        var hedgeSent = new CountDownLatch(1);
+
+        var result = RetryPolicy.execute(getSnapshot(1, true), () -> {
+            var future = futures.get(attemptCount.getAndIncrement());
+            if (future == hedgeFuture) {
+                hedgeSent.countDown();
+            }
+            return future;
+        });
+
+        assertTrue(hedgeSent.await(10, TimeUnit.SECONDS));
+
+        // the failed hedge is dropped while the first attempt is pending
+        var hedgeResponse = new StubResponse(500);
+        hedgeFuture.complete(hedgeResponse);
+        assertTrue(hedgeResponse.awaitClosed());
+        assertFalse(result.isDone());
+
+        var firstResponse = new StubResponse(200);
+        firstFuture.complete(firstResponse);
+        assertSame(firstResponse, result.join());
+        assertFalse(firstResponse.isClosed());
+
+    }
+
+    /**
+     * @param maxAttempts maximum number of attempts.
+     * @param isHedged    hedged request option.
+     * @return settings of a request.
+     */
+    private static PreferenceSnapshot getSnapshot(int maxAttempts, boolean isHedged) {
+
+        var preferences = Preferences.userRoot().node(PREFERENCES_NODE_PATH);
+        preferences.putInt(PreferenceHelper.I2L_RETRY_MAX_ATTEMPTS, maxAttempts);
+        preferences.putBoolean(PreferenceHelper.I2L_HEDGED_REQUEST_OPTION, isHedged);
+
+        return new PreferenceSnapshot(0, preferences);
+
+    }
+
+    /**
+     * @param server mock server to be requested.
+     * @return a future of the response.
+     */
+    private static CompletableFuture<HttpResponse<String>> send(MockMathpixServer server) {
+
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/v3/text")).
+                header("app_id", "test").
+                header("app_key", "test").
+                header("Content-Type", "application/json").
+                POST(HttpRequest.BodyPublishers.ofString(REQUEST_BODY)).
+                build();
+
+        return HTTP_CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+
+    }
+
+    /**
+     * Response with a body recording whether it is closed, as a streamed body would release its connection.
+     */
+    private static final class StubResponse implements HttpResponse<Closeable> {
+
+        private final int statusCode;
+        private final CountDownLatch closedLatch = new CountDownLatch(1);
+        private final Closeable body = closedLatch::countDown;
+
+        private StubResponse(int statusCode) {
+            this.statusCode = statusCode;
+        }
+
+        private boolean isClosed() {
+            return closedLatch.getCount() == 0;
+        }
+
+        /**
+         * @return whether the body is closed within the timeout, as a late outcome is handled on another thread.
+         */
+        private boolean awaitClosed() throws InterruptedException {
+            return closedLatch.await(10, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public int statusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public HttpRequest request() {
+            return HttpRequest.newBuilder(uri()).build();
+        }
+
+        @Override
+        public Optional<HttpResponse<Closeable>> previousResponse() {
+            return Optional.empty();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return HttpHeaders.of(Map.of(), (name, value) -> true);
+        }
+
+        @Override
+        public Closeable body() {
+            return body;
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return Optional.empty();
+        }
+
+        @Override
+        public URI uri() {
+            return URI.create("http://localhost/v3/text");
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return HttpClient.Version.HTTP_1_1;
+        }
+
+    }
+
+}